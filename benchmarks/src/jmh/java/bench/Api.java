@@ -0,0 +1,106 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Handles to the overlay tool. Its classes live in the unnamed package, which
+ * can't be imported from here (and JMH refuses to generate benchmarks in the
+ * unnamed package), so every entry point is looked up once and invoked through
+ * a constant MethodHandle. Rasters are passed around as plain Objects.
+ */
+final class Api {
+    static final Class<?> RASTER = load("ArgbRaster");
+    static final Class<?> COLORS = load("[[Ljava.awt.Color;");
+    static final Class<?> PROFILE = load("BackgroundProfile");
+    static final Class<?> STATS = load("ImageStats");
+    static final Class<?> KERNELS = load("PixelKernels");
+    static final Class<?> ENCODER = load("PngEncoder");
+    static final Class<?> FEATURES = load("FeaturePlanes");
+    static final Class<?> PARAMETERS = load("OverlayParameters");
+
+    static final MethodHandle FROM_IMAGE = find("ArgbRaster", "fromImage", RASTER, BufferedImage.class);
+    static final MethodHandle COPY = virtual("ArgbRaster", "copy", RASTER);
+    static final MethodHandle TO_IMAGE = virtual("ArgbRaster", "toImage", BufferedImage.class);
+    static final MethodHandle GET_OVERLAY = find("ImageTools", "getOverlay", RASTER, RASTER, RASTER);
+    static final MethodHandle GET_OVERLAY_MANUAL =
+        find("ImageTools", "getOverlayManual", RASTER, RASTER, RASTER, double.class);
+    static final MethodHandle FEATURES_OF = find("FeaturePlanes", "of", FEATURES, PROFILE, RASTER, STATS);
+    static final MethodHandle GET_OVERLAY_FEATURES = find("ImageTools", "getOverlay", RASTER, FEATURES, PARAMETERS);
+    static final MethodHandle GET_OVERLAY_MANUAL_FEATURES =
+        find("ImageTools", "getOverlayManual", RASTER, FEATURES, double.class);
+    static final MethodHandle GET_DEBUG_OVERLAY = find("ImageTools", "getDebugOverlay", RASTER, FEATURES);
+    static final Object DEFAULT_PARAMETERS = constant("OverlayParameters", "DEFAULT", PARAMETERS);
+    static final MethodHandle SHADE_OVERLAY = find("ImageTools", "shadeOverlay", RASTER, RASTER, RASTER, RASTER);
+    static final MethodHandle GET_EDGES = find("ImageTools", "getEdges", RASTER, RASTER);
+    static final MethodHandle ISOLATE_CLUSTERS = find("ImageTools", "isolateClusters", RASTER, RASTER);
+    static final MethodHandle SHIFT_IMAGE = find("ImageTools", "shiftImage", RASTER, RASTER);
+    static final MethodHandle PROFILE_OF = find("BackgroundProfile", "of", PROFILE, RASTER);
+    static final MethodHandle STATS_OF = find("ImageStats", "of", STATS, PROFILE, RASTER);
+    static final MethodHandle GET_MANUAL_SCORES =
+        find("ImageTools", "getManualScores", double[].class, PROFILE, RASTER, STATS);
+    static final MethodHandle SELECT_KERNELS = find("PixelKernels", "select", KERNELS, String.class);
+    static final MethodHandle KERNELS_NAME = virtual("PixelKernels", "name", String.class);
+    static final MethodHandle PNG_ENCODER = find("PngEncoder", "of", ENCODER, String.class, int.class);
+    static final MethodHandle ENCODE_PNG = virtual("PngEncoder", "encode", void.class, RASTER, OutputStream.class);
+    static final MethodHandle GET_COLORS = find("Main", "getColors", COLORS, BufferedImage.class);
+    static final MethodHandle GET_IMAGE = find("Main", "getImage", BufferedImage.class, COLORS);
+
+    private Api() {}
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Overlay tool is not on the classpath", e);
+        }
+    }
+
+    /** Finds a static method and erases the overlay tool's own types to Object. */
+    private static MethodHandle find(String owner, String name, Class<?> ret, Class<?>... params) {
+        try {
+            final MethodHandle mh = MethodHandles.publicLookup()
+                .findStatic(load(owner), name, MethodType.methodType(ret, params));
+            return mh.asType(MethodType.methodType(erase(ret), erase(params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing entry point: " + owner + "#" + name, e);
+        }
+    }
+
+    /** Reads a static field once, for constants which are passed back into the tool. */
+    private static Object constant(String owner, String name, Class<?> type) {
+        try {
+            return MethodHandles.publicLookup().findStaticGetter(load(owner), name, type).invoke();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Missing constant: " + owner + "#" + name, t);
+        }
+    }
+
+    /** Variant of #find for instance methods, where the receiver becomes the first parameter. */
+    private static MethodHandle virtual(String owner, String name, Class<?> ret, Class<?>... params) {
+        try {
+            final MethodHandle mh = MethodHandles.publicLookup()
+                .findVirtual(load(owner), name, MethodType.methodType(ret, params));
+            return mh.asType(MethodType.methodType(erase(ret), Object.class, erase(params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing entry point: " + owner + "#" + name, e);
+        }
+    }
+
+    private static Class<?> erase(Class<?> type) {
+        return type == RASTER || type == COLORS || type == PROFILE || type == STATS || type == KERNELS
+            || type == ENCODER || type == FEATURES || type == PARAMETERS
+            ? Object.class : type;
+    }
+
+    private static Class<?>[] erase(Class<?>[] params) {
+        final Class<?>[] erased = new Class<?>[params.length];
+        for (int i = 0; i < params.length; i++) {
+            erased[i] = erase(params[i]);
+        }
+        return erased;
+    }
+}
\ No newline at end of file
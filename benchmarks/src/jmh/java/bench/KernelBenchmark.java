@@ -0,0 +1,51 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+
+/** Compares the scalar and vector PixelKernels on the algorithms built from them. */
+public class KernelBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Kernels {
+        @Param({"scalar", "vector"})
+        public String kernels;
+
+        @Param({"16", "64", "256", "1024"})
+        public int size;
+
+        Object bg, fg, overlay, profile, stats;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            final Object selected = (Object) Api.SELECT_KERNELS.invokeExact(kernels);
+            final String name = (String) Api.KERNELS_NAME.invokeExact(selected);
+            if (!name.equals(kernels)) {
+                throw new IllegalStateException("Requested " + kernels + " kernels, got " + name);
+            }
+            final BufferedImage bgImage = Sprites.background(size, 42);
+            bg = Api.FROM_IMAGE.invokeExact(bgImage);
+            fg = Api.FROM_IMAGE.invokeExact(Sprites.ore(bgImage, 1, 7));
+            overlay = Api.GET_OVERLAY.invokeExact(bg, fg);
+            profile = Api.PROFILE_OF.invokeExact(bg);
+            stats = Api.STATS_OF.invokeExact(profile, fg);
+        }
+    }
+
+    @Benchmark
+    public Object shadeOverlay(Kernels k) throws Throwable {
+        final Object overlay = (Object) Api.COPY.invokeExact(k.overlay);
+        return (Object) Api.SHADE_OVERLAY.invokeExact(overlay, k.bg, k.fg);
+    }
+
+    @Benchmark
+    public double[] getManualScores(Kernels k) throws Throwable {
+        return (double[]) Api.GET_MANUAL_SCORES.invokeExact(k.profile, k.fg, k.stats);
+    }
+}
\ No newline at end of file
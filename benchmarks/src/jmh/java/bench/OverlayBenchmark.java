@@ -0,0 +1,148 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/** Benchmarks for each of the ImageTools algorithms and the Main conversions around them. */
+public class OverlayBenchmark {
+    private static final ConvolveOp SHARPEN = new ConvolveOp(
+        new Kernel(3, 3, new float[] {0, -1, 0, -1, 5, -1, 0, -1, 0}),
+        ConvolveOp.EDGE_ZERO_FILL,
+        null
+    );
+
+    @State(Scope.Benchmark)
+    public static class Sprite {
+        @Param({"16", "64", "256", "1024"})
+        public int size;
+
+        @Param({"1", "4"})
+        public int frames;
+
+        BufferedImage bgImage, oreImage;
+        Object bg, fg, overlay, colors, profile, stats;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            bgImage = Sprites.background(size, 42);
+            oreImage = Sprites.ore(bgImage, frames, 7);
+            bg = Api.FROM_IMAGE.invokeExact(bgImage);
+            fg = Api.FROM_IMAGE.invokeExact(oreImage);
+            profile = Api.PROFILE_OF.invokeExact(bg);
+            stats = Api.STATS_OF.invokeExact(profile, fg);
+            overlay = Api.GET_OVERLAY.invokeExact(bg, fg);
+            colors = Api.GET_COLORS.invokeExact(oreImage);
+        }
+    }
+
+    /** Shading still requires the ore to be the same size as the background. */
+    @State(Scope.Benchmark)
+    public static class StillSprite {
+        @Param({"16", "64", "256", "1024"})
+        public int size;
+
+        Object bg, fg, overlay;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            final BufferedImage bgImage = Sprites.background(size, 42);
+            bg = Api.FROM_IMAGE.invokeExact(bgImage);
+            fg = Api.FROM_IMAGE.invokeExact(Sprites.ore(bgImage, 1, 7));
+            overlay = Api.GET_OVERLAY.invokeExact(bg, fg);
+        }
+    }
+
+    @Benchmark
+    public Object getOverlay(Sprite s) throws Throwable {
+        return (Object) Api.GET_OVERLAY.invokeExact(s.bg, s.fg);
+    }
+
+    @Benchmark
+    public Object getOverlayManual(Sprite s) throws Throwable {
+        return (Object) Api.GET_OVERLAY_MANUAL.invokeExact(s.bg, s.fg, 1.2);
+    }
+
+    /** Extracting the FeaturePlanes of a pair on their own. */
+    @Benchmark
+    public Object features(Sprite s) throws Throwable {
+        return (Object) Api.FEATURES_OF.invokeExact(s.profile, s.fg, s.stats);
+    }
+
+    /** The regular, manual and debug overlays for a pair, sharing one set of features. */
+    @Benchmark
+    public Object[] allVariants(Sprite s) throws Throwable {
+        final Object features = (Object) Api.FEATURES_OF.invokeExact(s.profile, s.fg, s.stats);
+        return new Object[] {
+            (Object) Api.GET_OVERLAY_FEATURES.invokeExact(features, Api.DEFAULT_PARAMETERS),
+            (Object) Api.GET_OVERLAY_MANUAL_FEATURES.invokeExact(features, 1.2),
+            (Object) Api.GET_DEBUG_OVERLAY.invokeExact(features)
+        };
+    }
+
+    @Benchmark
+    public Object shadeOverlay(StillSprite s) throws Throwable {
+        // The overlay is blended in place, so each call needs a fresh copy.
+        final Object overlay = (Object) Api.COPY.invokeExact(s.overlay);
+        return (Object) Api.SHADE_OVERLAY.invokeExact(overlay, s.bg, s.fg);
+    }
+
+    @Benchmark
+    public Object getEdges(Sprite s) throws Throwable {
+        return (Object) Api.GET_EDGES.invokeExact(s.fg);
+    }
+
+    /** The ConvolveOp round trip which #getEdges used to make, for comparison. */
+    @Benchmark
+    public Object getEdgesConvolveOp(Sprite s) throws Throwable {
+        final BufferedImage image = (BufferedImage) Api.TO_IMAGE.invokeExact(s.fg);
+        return (Object) Api.FROM_IMAGE.invokeExact(SHARPEN.filter(image, null));
+    }
+
+    @Benchmark
+    public Object isolateClusters(Sprite s) throws Throwable {
+        return (Object) Api.ISOLATE_CLUSTERS.invokeExact(s.fg);
+    }
+
+    @Benchmark
+    public Object shiftImage(Sprite s) throws Throwable {
+        return (Object) Api.SHIFT_IMAGE.invokeExact(s.fg);
+    }
+
+    @Benchmark
+    public Object getColors(Sprite s) throws Throwable {
+        return (Object) Api.GET_COLORS.invokeExact(s.oreImage);
+    }
+
+    @Benchmark
+    public BufferedImage getImage(Sprite s) throws Throwable {
+        return (BufferedImage) Api.GET_IMAGE.invokeExact(s.colors);
+    }
+
+    @Benchmark
+    public Object getRaster(Sprite s) throws Throwable {
+        return (Object) Api.FROM_IMAGE.invokeExact(s.oreImage);
+    }
+
+    @Benchmark
+    public byte[] writePng(Sprite s) throws Throwable {
+        final BufferedImage image = (BufferedImage) Api.TO_IMAGE.invokeExact(s.overlay);
+        return encode(image);
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", os);
+        return os.toByteArray();
+    }
+}
\ No newline at end of file
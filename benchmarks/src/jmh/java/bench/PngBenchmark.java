@@ -0,0 +1,46 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+/** Compares the PNG encoders and deflate levels on a generated overlay. */
+public class PngBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Encoder {
+        @Param({"imageio", "lean"})
+        public String encoder;
+
+        @Param({"-1", "1", "9"})
+        public int level;
+
+        @Param({"16", "256", "1024"})
+        public int size;
+
+        Object png, overlay;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            png = (Object) Api.PNG_ENCODER.invokeExact(encoder, level);
+            final BufferedImage bgImage = Sprites.background(size, 42);
+            final Object bg = (Object) Api.FROM_IMAGE.invokeExact(bgImage);
+            final Object fg = (Object) Api.FROM_IMAGE.invokeExact(Sprites.ore(bgImage, 1, 7));
+            overlay = (Object) Api.GET_OVERLAY.invokeExact(bg, fg);
+        }
+    }
+
+    @Benchmark
+    public int encode(Encoder e) throws Throwable {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Api.ENCODE_PNG.invokeExact(e.png, e.overlay, (OutputStream) os);
+        return os.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Generates synthetic ore sprites in-process, so the benchmarks don't depend
+ * on any texture files. Backgrounds are stone-like gray noise and ores are
+ * the same background with colored clusters, optionally as an animated strip.
+ */
+final class Sprites {
+    private Sprites() {}
+
+    static BufferedImage background(int size, long seed) {
+        final Random rand = new Random(seed);
+        final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final int v = 100 + rand.nextInt(40);
+                image.setRGB(x, y, argb(255, v, v + rand.nextInt(5), v - rand.nextInt(5)));
+            }
+        }
+        return image;
+    }
+
+    /** Draws ore clusters over the background, once per frame of a vertical strip. */
+    static BufferedImage ore(BufferedImage background, int frames, long seed) {
+        final int size = background.getWidth();
+        final Random rand = new Random(seed);
+        final BufferedImage image = new BufferedImage(size, size * frames, BufferedImage.TYPE_INT_ARGB);
+        final int clusters = Math.max(3, size / 4);
+        final int radius = Math.max(1, size / 12);
+        final int[] cx = new int[clusters], cy = new int[clusters], colors = new int[clusters];
+        for (int i = 0; i < clusters; i++) {
+            cx[i] = rand.nextInt(size);
+            cy[i] = rand.nextInt(size);
+            colors[i] = argb(255, 40 + rand.nextInt(200), 40 + rand.nextInt(200), 40 + rand.nextInt(200));
+        }
+        for (int f = 0; f < frames; f++) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int pixel = background.getRGB(x, y);
+                    for (int i = 0; i < clusters; i++) {
+                        final int dx = x - cx[i], dy = y - cy[i];
+                        if (dx * dx + dy * dy <= radius * radius) {
+                            // Shift the brightness per frame to simulate a slow animation.
+                            pixel = shade(colors[i], (f * 7) % 30 - 15);
+                        }
+                    }
+                    image.setRGB(x, f * size + y, pixel);
+                }
+            }
+        }
+        return image;
+    }
+
+    private static int shade(int argb, int amount) {
+        final int r = clamp(((argb >> 16) & 0xFF) + amount);
+        final int g = clamp(((argb >> 8) & 0xFF) + amount);
+        final int b = clamp((argb & 0xFF) + amount);
+        return argb(255, r, g, b);
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : c > 255 ? 255 : c;
+    }
+
+    private static int argb(int a, int r, int g, int b) {
+        return (a << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+}
\ No newline at end of file
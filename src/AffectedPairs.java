@@ -0,0 +1,111 @@
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The pairs to regenerate after a change reported by InputWatcher, and the
+ * paths whose old outputs may be replaced. A background affects every ore in
+ * its directory, a sprite or its .mcmeta affects that sprite alone, and a
+ * changed directory affects everything inside.
+ */
+public class AffectedPairs {
+    private final File ores, backgrounds;
+    /** The pairs whose sprite and background both exist, in the order they were found. */
+    public final List<ImagePair> pairs = new ArrayList<>();
+    /** The affected sprites which no longer exist, sorted. Their old outputs are deleted. */
+    public final Set<String> removed = new TreeSet<>();
+    /** The affected sprites without a background, sorted. Their old outputs are kept. */
+    public final Set<String> skipped = new TreeSet<>();
+    /** Every affected pair by path, including ones whose sprites no longer exist. */
+    private final Set<String> paths = new HashSet<>();
+    /** Directories in which every pair is affected. */
+    private final Set<String> directories = new HashSet<>();
+
+    private AffectedPairs(File ores, File backgrounds) {
+        this.ores = ores;
+        this.backgrounds = backgrounds;
+    }
+
+    /** Maps changed input files to the pairs which use them. */
+    public static AffectedPairs of(Set<File> changed, File ores, File backgrounds) {
+        final AffectedPairs affected = new AffectedPairs(ores, backgrounds);
+        final Path oresPath = ores.toPath().toAbsolutePath().normalize();
+        final Path backgroundsPath = backgrounds.toPath().toAbsolutePath().normalize();
+        for (File f : changed) {
+            final Path path = f.toPath().toAbsolutePath().normalize();
+            if (path.equals(oresPath) || path.equals(backgroundsPath)) {
+                final File[] dirs = ores.listFiles(File::isDirectory);
+                for (File dir : dirs != null ? dirs : new File[0]) {
+                    affected.addDirectory(dir.getName());
+                }
+            } else if (path.startsWith(backgroundsPath) && path.getNameCount() == backgroundsPath.getNameCount() + 1) {
+                final String name = path.getFileName().toString();
+                if (name.endsWith(".png")) {
+                    affected.addDirectory(name.substring(0, name.length() - ".png".length()));
+                }
+            } else if (path.startsWith(oresPath)) {
+                final Path relative = oresPath.relativize(path);
+                if (relative.getNameCount() == 1) {
+                    affected.addDirectory(relative.toString());
+                } else if (relative.getNameCount() == 2) {
+                    final String name = relative.getFileName().toString();
+                    affected.addPair(relative.getName(0).toString(), name.replaceAll("\\.mcmeta$", ""));
+                }
+            }
+        }
+        return affected;
+    }
+
+    /** Adds every sprite in an ore directory, and any pairs which used to be in it. */
+    private void addDirectory(String directory) {
+        if (!directories.add(directory)) {
+            return;
+        }
+        final File bg = new File(backgrounds, directory + ".png");
+        new FileArch(bg, new File(ores, directory)).streamOres()
+            .forEach(ore -> addPair(directory, ore.getName()));
+    }
+
+    /** Adds a single sprite, if it exists and its background does too. */
+    private void addPair(String directory, String name) {
+        final String path = directory + "/" + name;
+        if (!name.endsWith(".png") || !paths.add(path)) {
+            return;
+        }
+        final File ore = new File(new File(ores, directory), name);
+        final File bg = new File(backgrounds, directory + ".png");
+        if (!ore.isFile()) {
+            removed.add(path);
+        } else if (!bg.isFile()) {
+            skipped.add(path);
+        } else {
+            pairs.add(new ImagePair(directory, name, bg, ore));
+        }
+    }
+
+    /** Whether the old outputs of a pair are replaced, rather than carried over. */
+    public boolean contains(String path) {
+        return (paths.contains(path) || directories.contains(path.substring(0, path.indexOf('/'))))
+            && !skipped.contains(path);
+    }
+
+    public boolean isEmpty() {
+        return paths.isEmpty() && directories.isEmpty();
+    }
+
+    /** Lists the removed and skipped sprites, in the format of the reports printed for each pair. */
+    public String format() {
+        final StringBuilder sb = new StringBuilder();
+        for (String path : removed) {
+            sb.append("removed:     ").append(path).append("\n\n");
+        }
+        for (String path : skipped) {
+            sb.append("skipped:     ").append(path).append(" has no background\n\n");
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
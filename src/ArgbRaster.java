@@ -0,0 +1,133 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * A primitive image buffer storing one packed ARGB int per pixel in row-major
+ * order. This replaces the old Color[][] matrices so that no objects need to
+ * be allocated per pixel.
+ */
+public class ArgbRaster {
+    public final int width, height;
+    public final int[] pixels;
+
+    public ArgbRaster(int width, int height) {
+        this(width, height, new int[width * height]);
+    }
+
+    public ArgbRaster(int width, int height, int[] pixels) {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " pixels, got " + pixels.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /** Copies the pixels out of any BufferedImage, reading directly from its buffer when possible. */
+    public static ArgbRaster fromImage(BufferedImage image) {
+        final int w = image.getWidth(), h = image.getHeight();
+        final int[] pixels = new int[w * h];
+        if (isPackedArgb(image)) {
+            final DataBufferInt buffer = (DataBufferInt) image.getRaster().getDataBuffer();
+            System.arraycopy(buffer.getData(), buffer.getOffset(), pixels, 0, pixels.length);
+        } else {
+            image.getRGB(0, 0, w, h, pixels, 0, w);
+        }
+        return new ArgbRaster(w, h, pixels);
+    }
+
+    /** Variant of #fromImage which accepts a color matrix. */
+    public static ArgbRaster fromColors(Color[][] colors) {
+        final int w = colors.length, h = colors[0].length;
+        final int[] pixels = new int[w * h];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                pixels[y * w + x] = colors[x][y].getRGB();
+            }
+        }
+        return new ArgbRaster(w, h, pixels);
+    }
+
+    /** Generates a blank (fully transparent) image. */
+    public static ArgbRaster empty(int width, int height) {
+        return new ArgbRaster(width, height);
+    }
+
+    /**
+     * Wraps this buffer in a TYPE_INT_ARGB BufferedImage without copying.
+     * Any changes to the image will be reflected in this raster.
+     */
+    public BufferedImage toImage() {
+        final DirectColorModel cm = (DirectColorModel) ColorModel.getRGBdefault();
+        final SinglePixelPackedSampleModel sm =
+            new SinglePixelPackedSampleModel(DataBufferInt.TYPE_INT, width, height, cm.getMasks());
+        final WritableRaster raster = Raster.createWritableRaster(sm, new DataBufferInt(pixels, pixels.length), null);
+        return new BufferedImage(cm, raster, false, null);
+    }
+
+    /** Converts this buffer back into a color matrix for legacy callers. */
+    public Color[][] toColors() {
+        final Color[][] colors = new Color[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                colors[x][y] = new Color(pixels[y * width + x], true);
+            }
+        }
+        return colors;
+    }
+
+    public int get(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    public void set(int x, int y, int argb) {
+        pixels[y * width + x] = argb;
+    }
+
+    public ArgbRaster copy() {
+        return new ArgbRaster(width, height, pixels.clone());
+    }
+
+    public static int alpha(int argb) {
+        return argb >>> 24;
+    }
+
+    public static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    public static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    public static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    public static int argb(int a, int r, int g, int b) {
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /** Determines whether the image is backed by an unshared, gapless int[] in ARGB order. */
+    private static boolean isPackedArgb(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            return false;
+        }
+        final WritableRaster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+        final SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return raster.getParent() == null
+            && raster.getSampleModelTranslateX() == 0
+            && raster.getSampleModelTranslateY() == 0
+            && sm.getScanlineStride() == image.getWidth();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every statistic which depends only on the background image. A single
+ * profile is shared by every ore in the same /ores/<name> directory and
+ * by every algorithm variant, so these values are only calculated once.
+ */
+public class BackgroundProfile {
+    /** Loaded profiles by canonical path. Entries are replaced when the file's contents change. */
+    private static final Map<String, BackgroundProfile> CACHE = new ConcurrentHashMap<>();
+
+    public final ArgbRaster raster;
+    /** A digest of the file contents, or null if this profile was not loaded from a file. */
+    public final String hash;
+    public final int avgColor;
+    public final double avgDistance;
+    /** Solid rasters of the average color used by #shadeOverlay, keyed by size. */
+    private final Map<Long, ArgbRaster> filled = new ConcurrentHashMap<>();
+
+    private BackgroundProfile(ArgbRaster raster, String hash) {
+        this.raster = raster;
+        this.hash = hash;
+        this.avgColor = ImageTools.getAverageColor(raster);
+        this.avgDistance = ImageTools.getAverageDistance(raster);
+    }
+
+    /** Generates a profile for a raster which did not come from the disk. It is not cached. */
+    public static BackgroundProfile of(ArgbRaster raster) {
+        return new BackgroundProfile(raster, null);
+    }
+
+    /**
+     * Loads the profile for a background file, reusing the cached copy unless
+     * the file's contents have changed since it was last loaded.
+     */
+    public static BackgroundProfile load(File f) throws IOException {
+        final byte[] bytes = Files.readAllBytes(f.toPath());
+        final String hash = Hashes.sha256(bytes);
+        final String key = f.getCanonicalPath();
+        final BackgroundProfile cached = CACHE.get(key);
+        if (cached != null && cached.hash.equals(hash)) {
+            return cached;
+        }
+        return CACHE.compute(key, (k, old) -> {
+            if (old != null && old.hash.equals(hash)) {
+                return old;
+            }
+            try {
+                return new BackgroundProfile(SpriteCache.load(f, () -> decode(f, bytes)), hash);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static ArgbRaster decode(File f, byte[] bytes) {
+        try {
+            final BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IllegalArgumentException("Error reading image: " + f);
+            }
+            return ArgbRaster.fromImage(image);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error reading image: " + f, e);
+        }
+    }
+
+    /**
+     * Returns a raster of the given size filled with the average color. The
+     * result is shared between callers and must not be modified.
+     */
+    public ArgbRaster getFilled(int width, int height) {
+        final long key = ((long) width << 32) | (height & 0xFFFFFFFFL);
+        return filled.computeIfAbsent(key, k -> ImageTools.fillColors(new ArgbRaster(width, height), avgColor));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Fans independent ImagePairs out across a fork-join pool. Every pair is
+ * isolated, so a single bad sprite is recorded as a failure instead of
+ * aborting the run, and results are always reported in input order.
+ */
+public class BatchExecutor {
+    private final int parallelism;
+
+    public BatchExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Processes every pair and returns their results in the same order. Pairs
+     * are pulled from the stream only as workers free up, so at most a couple
+     * of pairs per thread are ever held in memory at once.
+     */
+    public List<PairResult> run(Stream<ImagePair> pairs, PairTask task) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        final Semaphore inFlight = new Semaphore(parallelism * 2);
+        try {
+            final List<ForkJoinTask<PairResult>> tasks = new ArrayList<>();
+            final Iterator<ImagePair> iterator = pairs.iterator();
+            while (iterator.hasNext()) {
+                final ImagePair pair = iterator.next();
+                inFlight.acquireUninterruptibly();
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return process(pair, task);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            final List<PairResult> results = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<PairResult> t : tasks) {
+                results.add(t.join());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static PairResult process(ImagePair pair, PairTask task) {
+        final long start = System.nanoTime();
+        try {
+            final String report = task.process(pair);
+            return PairResult.success(pair, report, System.nanoTime() - start);
+        } catch (Throwable t) {
+            // Including Errors, such as running out of memory on one oversized sprite.
+            return PairResult.failure(pair, t, System.nanoTime() - start);
+        }
+    }
+
+    /** Prints each report followed by a summary of the run, in input order. */
+    public static void printSummary(List<PairResult> results, long nanos) {
+        int failures = 0;
+        for (PairResult result : results) {
+            if (result.isSuccess()) {
+                System.out.println(result.report);
+            } else {
+                failures++;
+            }
+        }
+        System.out.println("Processed " + results.size() + " pairs in " + (nanos / 1_000_000) + " ms: "
+            + (results.size() - failures) + " succeeded, " + failures + " failed.");
+        for (PairResult result : results) {
+            if (!result.isSuccess()) {
+                System.out.println("  FAILED " + result.pair.getPath() + ": " + result.error);
+            }
+        }
+    }
+
+    /** The work to perform for each pair, returning a report to print at the end. */
+    public interface PairTask {
+        String process(ImagePair pair) throws Exception;
+    }
+}
\ No newline at end of file
@@ -1,8 +1,14 @@
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 public class BufferOutputStream extends ByteArrayOutputStream {
     public synchronized ByteArrayInputStream toInputStream() {
         return new ByteArrayInputStream(buf, 0, size());
     }
+
+    /** Wraps the written bytes without copying them. */
+    public synchronized ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, size());
+    }
 }
\ No newline at end of file
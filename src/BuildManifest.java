@@ -0,0 +1,238 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Remembers which inputs and parameters produced each pair's outputs, so that
+ * a rerun only regenerates the pairs which actually changed. The manifest is
+ * stored in /output as one line per pair: its path, a key hashing everything
+ * that went into it, and the files it produced. Outputs which are no longer
+ * produced by any pair are deleted when the manifest is saved.
+ */
+public class BuildManifest {
+    private static final String FILE_NAME = ".manifest";
+
+    private final Path root;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    /** Pairs which failed this run. Their old outputs are left alone. */
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    /** Digests of input files shared between pairs, such as backgrounds. */
+    private final Map<File, String> digests = new ConcurrentHashMap<>();
+    private final String parameters;
+
+    private BuildManifest(Path root, Map<String, Entry> previous, String parameters) {
+        this.root = root;
+        this.previous = previous;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Reads the manifest in the output directory. Every parameter which
+     * affects the outputs must be included in the given string, apart from
+     * the PNG encoder, which can differ between pairs. See #getKey.
+     */
+    public static BuildManifest load(File output, String parameters) throws IOException {
+        final Path root = output.toPath();
+        final Path file = root.resolve(FILE_NAME);
+        final Map<String, Entry> entries = new HashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split("\t");
+                    if (fields.length >= 2) {
+                        final List<String> outputs = Arrays.asList(fields).subList(2, fields.length);
+                        entries.put(fields[0], new Entry(fields[1], outputs));
+                    }
+                }
+            }
+        }
+        return new BuildManifest(root, entries, parameters);
+    }
+
+    /**
+     * Hashes the background, ore, its .mcmeta, the mask, and every parameter
+     * for a single pair, including the PNG encoder which writes its outputs.
+     */
+    public String getKey(ImagePair pair, String encoder) throws IOException {
+        final MessageDigest digest = Hashes.newDigest();
+        update(digest, parameters);
+        update(digest, encoder);
+        update(digest, getDigest(pair.background));
+        update(digest, Hashes.sha256(Files.readAllBytes(pair.ore.toPath())));
+        final File mcmeta = new File(pair.ore.getPath() + ".mcmeta");
+        update(digest, mcmeta.exists() ? Hashes.sha256(Files.readAllBytes(mcmeta.toPath())) : "");
+        return Hashes.toHex(digest.digest());
+    }
+
+    private String getDigest(File f) throws IOException {
+        final String cached = digests.get(f);
+        if (cached != null) {
+            return cached;
+        }
+        final String hash = Hashes.sha256(Files.readAllBytes(f.toPath()));
+        digests.put(f, hash);
+        return hash;
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /** Whether the pair was last generated with the same key and all of its outputs still exist. */
+    public boolean isUpToDate(ImagePair pair, String key) {
+        final Entry entry = previous.get(pair.getPath());
+        if (entry == null || !entry.key.equals(key)) {
+            return false;
+        }
+        for (String output : entry.outputs) {
+            if (!Files.exists(root.resolve(output))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Carries an up to date pair over into the new manifest. */
+    public void keep(ImagePair pair) {
+        current.put(pair.getPath(), previous.get(pair.getPath()));
+    }
+
+    /** Records the outputs which were just generated for a pair. */
+    public void record(ImagePair pair, String key, List<File> outputs) {
+        final List<String> paths = new ArrayList<>(outputs.size());
+        for (File f : outputs) {
+            paths.add(relativize(f));
+        }
+        current.put(pair.getPath(), new Entry(key, paths));
+    }
+
+    private String relativize(File output) {
+        return root.relativize(output.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Carries over every previous pair which isn't affected, for runs which
+     * only process some of the pairs. Affected pairs which weren't processed,
+     * such as deleted sprites, are dropped along with their outputs.
+     */
+    public void keepUnaffected(Predicate<String> affected) {
+        for (Map.Entry<String, Entry> entry : previous.entrySet()) {
+            if (!affected.test(entry.getKey())) {
+                current.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Leaves a pair's old outputs in place and makes sure it is regenerated next time. */
+    public void fail(ImagePair pair) {
+        current.remove(pair.getPath());
+        failed.add(pair.getPath());
+    }
+
+    /**
+     * Fails every pair recorded with any of the given outputs, such as images
+     * which the sink couldn't write after their pair was processed.
+     */
+    public void failOutputs(Set<File> outputs) {
+        final Set<String> paths = new HashSet<>();
+        for (File f : outputs) {
+            paths.add(relativize(f));
+        }
+        for (Map.Entry<String, Entry> entry : current.entrySet()) {
+            if (entry.getValue().outputs.stream().anyMatch(paths::contains)) {
+                current.remove(entry.getKey());
+                failed.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Deletes any outputs which are no longer produced and writes the new
+     * manifest. Pairs whose outputs went missing, e.g. because a write
+     * failed, are left out so that they are regenerated next time.
+     */
+    public void save() throws IOException {
+        final Set<String> produced = new HashSet<>();
+        for (Entry entry : current.values()) {
+            produced.addAll(entry.outputs);
+        }
+        for (Map.Entry<String, Entry> old : previous.entrySet()) {
+            if (failed.contains(old.getKey())) {
+                continue;
+            }
+            for (String output : old.getValue().outputs) {
+                if (!produced.contains(output)) {
+                    delete(root.resolve(output));
+                }
+            }
+        }
+        final List<String> paths = new ArrayList<>(current.keySet());
+        Collections.sort(paths);
+        Files.createDirectories(root);
+        final Path temp = Files.createTempFile(root, FILE_NAME, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String path : paths) {
+                final Entry entry = current.get(path);
+                if (!entry.outputs.stream().allMatch(output -> Files.exists(root.resolve(output)))) {
+                    continue;
+                }
+                writer.write(path + "\t" + entry.key);
+                for (String output : entry.outputs) {
+                    writer.write("\t" + output);
+                }
+                writer.newLine();
+            }
+        }
+        Files.move(temp, root.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Deletes a stale output along with any directories it leaves empty. */
+    private void delete(Path output) throws IOException {
+        Files.deleteIfExists(output);
+        Path dir = output.getParent();
+        while (dir != null && !dir.equals(root) && dir.startsWith(root) && isEmpty(dir)) {
+            Files.delete(dir);
+            dir = dir.getParent();
+        }
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return !files.findAny().isPresent();
+        }
+    }
+
+    /** The key and outputs recorded for a single pair. */
+    private static class Entry {
+        final String key;
+        final List<String> outputs;
+
+        Entry(String key, List<String> outputs) {
+            this.key = key;
+            this.outputs = outputs;
+        }
+    }
+}
\ No newline at end of file
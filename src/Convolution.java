@@ -0,0 +1,166 @@
+/**
+ * A small integer kernel applied to every channel of a packed raster,
+ * including alpha. Pixels beyond the edges of the image repeat the nearest
+ * edge pixel. Each weighted sum is divided by the divisor, rounding half up,
+ * and clamped to 0-255.
+ */
+public class Convolution {
+    /** Rows wider than this are processed in tiles, so the rows under the kernel stay in cache. */
+    private static final int TILE_WIDTH = 1024;
+
+    /** A 3x3 sharpening kernel, as used by ImageTools#getEdges. */
+    public static final Convolution SHARPEN = new Convolution(3, 3, 1,
+        0, -1, 0,
+        -1, 5, -1,
+        0, -1, 0
+    );
+
+    public final int width, height, divisor;
+    /** The position and weight of every non-zero tap, relative to the center. */
+    private final int[] tapX, tapY, tapWeight;
+    /**
+     * Added to every channel sum so that it can't go negative, or -1 if a
+     * sum might not fit in 16 bits. See #convolvePacked.
+     */
+    private final int bias;
+
+    /** Creates a kernel from its weights in row-major order. Both dimensions must be odd. */
+    public Convolution(int width, int height, int divisor, int... weights) {
+        if (width < 1 || height < 1 || width % 2 == 0 || height % 2 == 0) {
+            throw new IllegalArgumentException("Kernel dimensions must be odd: " + width + "x" + height);
+        }
+        if (weights.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " weights: " + weights.length);
+        }
+        if (divisor < 1) {
+            throw new IllegalArgumentException("Divisor must be positive: " + divisor);
+        }
+        this.width = width;
+        this.height = height;
+        this.divisor = divisor;
+        int taps = 0;
+        for (int weight : weights) {
+            if (weight != 0) {
+                taps++;
+            }
+        }
+        this.tapX = new int[taps];
+        this.tapY = new int[taps];
+        this.tapWeight = new int[taps];
+        for (int i = 0, t = 0; i < weights.length; i++) {
+            if (weights[i] != 0) {
+                tapX[t] = i % width - width / 2;
+                tapY[t] = i / width - height / 2;
+                tapWeight[t++] = weights[i];
+            }
+        }
+        int positive = 0, negative = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                positive += weight;
+            } else {
+                negative -= weight;
+            }
+        }
+        this.bias = (positive + negative) * 255 < 0x10000 ? negative * 255 : -1;
+    }
+
+    /** Convolves the image into a new raster, splitting large images between threads. */
+    public ArgbRaster apply(ArgbRaster image) {
+        return apply(image, image.pixels.length >= ImageTools.PARALLEL_PIXELS);
+    }
+
+    /** Convolves the image into a new raster, optionally splitting its rows between threads. */
+    public ArgbRaster apply(ArgbRaster image, boolean parallel) {
+        final ArgbRaster out = new ArgbRaster(image.width, image.height);
+        ImageTools.forEachBand(image.height, parallel, (from, to) -> {
+            final int[] rows = new int[tapWeight.length];
+            for (int left = 0; left < image.width; left += TILE_WIDTH) {
+                final int right = Math.min(image.width, left + TILE_WIDTH);
+                for (int y = from; y < to; y++) {
+                    convolveRow(image, out, y, left, right, rows);
+                }
+            }
+        });
+        return out;
+    }
+
+    /** Convolves the pixels from left to right in a single row. */
+    private void convolveRow(ArgbRaster image, ArgbRaster out, int y, int left, int right, int[] rows) {
+        final int w = image.width, h = image.height;
+        for (int t = 0; t < rows.length; t++) {
+            rows[t] = clamp(y + tapY[t], h) * w;
+        }
+        // Only the columns within reach of either edge need their taps clamped.
+        final int innerLeft = Math.min(right, Math.max(left, width / 2));
+        final int innerRight = Math.max(innerLeft, Math.min(right, w - width / 2));
+        final int row = y * w;
+        for (int x = left; x < innerLeft; x++) {
+            out.pixels[row + x] = convolve(image.pixels, rows, x, w, true);
+        }
+        if (bias >= 0) {
+            convolvePacked(image.pixels, out.pixels, row, innerLeft, innerRight, rows);
+        } else {
+            for (int x = innerLeft; x < innerRight; x++) {
+                out.pixels[row + x] = convolve(image.pixels, rows, x, w, false);
+            }
+        }
+        for (int x = innerRight; x < right; x++) {
+            out.pixels[row + x] = convolve(image.pixels, rows, x, w, true);
+        }
+    }
+
+    private int convolve(int[] pixels, int[] rows, int x, int w, boolean clampColumns) {
+        int a = 0, r = 0, g = 0, b = 0;
+        for (int t = 0; t < rows.length; t++) {
+            final int sx = clampColumns ? clamp(x + tapX[t], w) : x + tapX[t];
+            final int pixel = pixels[rows[t] + sx];
+            final int weight = tapWeight[t];
+            a += ArgbRaster.alpha(pixel) * weight;
+            r += ArgbRaster.red(pixel) * weight;
+            g += ArgbRaster.green(pixel) * weight;
+            b += ArgbRaster.blue(pixel) * weight;
+        }
+        return ArgbRaster.argb(channel(a), channel(r), channel(g), channel(b));
+    }
+
+    /**
+     * Convolves the columns which need no clamping, two channels at a time.
+     * Alpha and green share one int and red and blue share another, each in
+     * its own 16 bit half. This is exact as long as every biased sum fits in
+     * 16 bits, so that no carry crosses into the other half.
+     */
+    private void convolvePacked(int[] pixels, int[] out, int row, int left, int right, int[] rows) {
+        final int taps = rows.length;
+        final int[] offsets = new int[taps];
+        for (int t = 0; t < taps; t++) {
+            offsets[t] = rows[t] + tapX[t];
+        }
+        final int packedBias = bias * 0x10001;
+        for (int x = left; x < right; x++) {
+            int ag = packedBias, rb = packedBias;
+            for (int t = 0; t < taps; t++) {
+                final int pixel = pixels[offsets[t] + x];
+                ag += ((pixel >>> 8) & 0xFF00FF) * tapWeight[t];
+                rb += (pixel & 0xFF00FF) * tapWeight[t];
+            }
+            out[row + x] = ArgbRaster.argb(
+                channel((ag >>> 16) - bias),
+                channel((rb >>> 16) - bias),
+                channel((ag & 0xFFFF) - bias),
+                channel((rb & 0xFFFF) - bias)
+            );
+        }
+    }
+
+    private int channel(int sum) {
+        final int c = divisor == 1 ? sum : Math.floorDiv(sum + divisor / 2, divisor);
+        // Sharpened sums land outside the range often enough that branches
+        // mispredict badly, so this is written to compile to conditional moves.
+        return Math.max(0, Math.min(255, c));
+    }
+
+    private static int clamp(int i, int length) {
+        return i < 0 ? 0 : i >= length ? length - 1 : i;
+    }
+}
\ No newline at end of file
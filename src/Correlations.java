@@ -0,0 +1,164 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Correlates the metrics of each sprite with the ideal thresholds recorded
+ * by hand in a ground truth file, such as "Ore Data-annotated.txt". That file
+ * holds one block of "key: value" lines per sprite, starting with its name.
+ * Any block may also include "min ideal", "max ideal" and "avg ideal", and
+ * sprites without them are ignored.
+ *
+ * Usage: java Correlations <ground truth> [stats.csv]
+ *
+ * Without a stats table, the metrics recorded in the ground truth file are
+ * used. Otherwise, the metrics come from the table written by a run with
+ * -Doverlay.stats and are matched to the ground truth by sprite name.
+ */
+public class Correlations {
+    /** The ground truth values, as labeled in the annotated file. */
+    public static final List<String> TARGETS = List.of("min ideal", "max ideal", "avg ideal");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java Correlations <ground truth> [stats.csv]");
+            return;
+        }
+        final Map<String, Map<String, Double>> truth = readAnnotated(new File(args[0]));
+        final Map<String, Map<String, Double>> metrics = args.length > 1 ? StatsTable.read(new File(args[1])) : truth;
+        System.out.print(format(correlate(metrics, truth)));
+    }
+
+    /** Reads every block in an annotated file, returning its numeric values by sprite name. */
+    public static Map<String, Map<String, Double>> readAnnotated(File file) throws IOException {
+        final Map<String, Map<String, Double>> sprites = new LinkedHashMap<>();
+        Map<String, Double> current = null;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            final int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            final String key = line.substring(0, colon).trim();
+            final String value = line.substring(colon + 1).trim();
+            if (key.equals("name")) {
+                current = new LinkedHashMap<>();
+                sprites.put(value, current);
+            } else if (current != null && !value.isEmpty()) {
+                try {
+                    current.put(key, Double.parseDouble(value));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return sprites;
+    }
+
+    /**
+     * Calculates the Pearson correlation and least squares fit between every
+     * metric and every target, returning them by target and then by metric.
+     * Each metric is handled in parallel. Sprites missing either value, or
+     * with a non-finite value, are left out of that pair.
+     */
+    public static Map<String, Map<String, Fit>> correlate(
+        Map<String, Map<String, Double>> metrics, Map<String, Map<String, Double>> truth
+    ) {
+        final Set<String> names = new LinkedHashSet<>();
+        metrics.values().forEach(m -> names.addAll(m.keySet()));
+        names.removeAll(TARGETS);
+        final List<String> columns = new ArrayList<>(names);
+        final List<List<Fit>> fits = columns.parallelStream()
+            .map(metric -> TARGETS.stream().map(target -> fit(metrics, truth, metric, target)).collect(Collectors.toList()))
+            .collect(Collectors.toList());
+        final Map<String, Map<String, Fit>> results = new LinkedHashMap<>();
+        for (int t = 0; t < TARGETS.size(); t++) {
+            final Map<String, Fit> byMetric = new LinkedHashMap<>();
+            for (int m = 0; m < columns.size(); m++) {
+                byMetric.put(columns.get(m), fits.get(m).get(t));
+            }
+            results.put(TARGETS.get(t), byMetric);
+        }
+        return results;
+    }
+
+    private static Fit fit(
+        Map<String, Map<String, Double>> metrics, Map<String, Map<String, Double>> truth, String metric, String target
+    ) {
+        final List<double[]> points = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> sprite : metrics.entrySet()) {
+            final Map<String, Double> ideal = truth.get(sprite.getKey());
+            final Double x = sprite.getValue().get(metric);
+            final Double y = ideal != null ? ideal.get(target) : null;
+            if (x != null && y != null && Double.isFinite(x) && Double.isFinite(y)) {
+                points.add(new double[] {x, y});
+            }
+        }
+        return Fit.of(points);
+    }
+
+    /** Formats the results like the table at the top of the annotated file. */
+    public static String format(Map<String, Map<String, Fit>> results) {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Map<String, Fit>> target : results.entrySet()) {
+            sb.append("WITH: ").append(target.getKey()).append('\n');
+            String best = null;
+            for (Map.Entry<String, Fit> metric : target.getValue().entrySet()) {
+                final Fit fit = metric.getValue();
+                sb.append(String.format(Locale.ROOT, "%-13s%5.2f%n", metric.getKey() + ":", fit.r));
+                if (!Double.isNaN(fit.r) && (best == null || Math.abs(fit.r) > Math.abs(target.getValue().get(best).r))) {
+                    best = metric.getKey();
+                }
+            }
+            if (best != null) {
+                final Fit fit = target.getValue().get(best);
+                sb.append(String.format(Locale.ROOT, "best fit:    %s = %.4f * %s %s %.4f (r^2 = %.2f, n = %d)%n",
+                    target.getKey(), fit.slope, best, fit.intercept < 0 ? "-" : "+", Math.abs(fit.intercept),
+                    fit.r * fit.r, fit.n));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** The correlation and least squares line between two variables. */
+    public static class Fit {
+        /** The Pearson correlation coefficient, or NaN if either variable is constant. */
+        public final double r;
+        public final double slope, intercept;
+        /** The number of samples. */
+        public final int n;
+
+        private Fit(double r, double slope, double intercept, int n) {
+            this.r = r;
+            this.slope = slope;
+            this.intercept = intercept;
+            this.n = n;
+        }
+
+        static Fit of(List<double[]> points) {
+            final int n = points.size();
+            double sumX = 0, sumY = 0;
+            for (double[] p : points) {
+                sumX += p[0];
+                sumY += p[1];
+            }
+            final double meanX = sumX / n, meanY = sumY / n;
+            double xx = 0, yy = 0, xy = 0;
+            for (double[] p : points) {
+                final double dx = p[0] - meanX, dy = p[1] - meanY;
+                xx += dx * dx;
+                yy += dy * dy;
+                xy += dx * dy;
+            }
+            final double slope = xy / xx;
+            return new Fit(xy / Math.sqrt(xx * yy), slope, meanY - slope * meanX, n);
+        }
+    }
+}
\ No newline at end of file
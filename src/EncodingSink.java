@@ -0,0 +1,118 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes images as PNGs on a dedicated pool of threads, so that the workers
+ * can move on to the next pair immediately. At most #capacity images wait to
+ * be encoded at once, after which #write blocks until one finishes. With no
+ * threads, every image is encoded on the caller's thread instead. Subclasses
+ * decide where the encoded bytes are stored.
+ */
+public abstract class EncodingSink implements ImageSink {
+    private final PngEncoder encoder;
+    private final ExecutorService pool;
+    private final Semaphore queued;
+    private final List<IOException> failures = new CopyOnWriteArrayList<>();
+    private final Set<File> failedFiles = ConcurrentHashMap.newKeySet();
+
+    protected EncodingSink(PngEncoder encoder, int threads, int capacity) {
+        if (threads < 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid output stage: " + threads + " threads, capacity " + capacity);
+        }
+        this.encoder = encoder;
+        this.pool = threads > 0 ? Executors.newFixedThreadPool(threads, daemonThreads()) : null;
+        this.queued = new Semaphore(capacity);
+    }
+
+    /** Creates the encoder configured in Settings. */
+    protected static PngEncoder encoderFromSettings() {
+        return PngEncoder.of(Settings.PNG_ENCODER, Settings.PNG_LEVEL);
+    }
+
+    @Override
+    public void write(ArgbRaster image, File file) throws IOException {
+        if (pool == null) {
+            writeNow(image, file);
+            return;
+        }
+        queued.acquireUninterruptibly();
+        pool.execute(() -> {
+            try {
+                writeNow(image, file);
+            } catch (Throwable t) {
+                // Otherwise, an Error such as running out of memory would end the thread without a trace.
+                failures.add(new IOException("Error writing image: " + file, t));
+                failedFiles.add(file);
+            } finally {
+                queued.release();
+            }
+        });
+    }
+
+    private void writeNow(ArgbRaster image, File file) throws IOException {
+        final BufferOutputStream png = new BufferOutputStream();
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.ENCODE).pixels(image.pixels.length)) {
+            encoder.encode(image, png);
+            t.bytes(png.size());
+        }
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.WRITE)) {
+            t.bytes(png.size());
+            store(file, png);
+        }
+    }
+
+    @Override
+    public Set<File> getFailedFiles() {
+        return failedFiles;
+    }
+
+    /** Stores a fully encoded PNG. May be called from several threads at once. */
+    protected abstract void store(File file, BufferOutputStream png) throws IOException;
+
+    /** Called once every image has been stored, before any failures are reported. */
+    protected void finish() throws IOException {}
+
+    @Override
+    public void close() throws IOException {
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    System.err.println("Still waiting for images to be written...");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing images", e);
+            }
+        }
+        try {
+            finish();
+        } catch (IOException e) {
+            failures.add(e);
+        }
+        if (!failures.isEmpty()) {
+            final IOException e = new IOException(failures.size() + " image(s) could not be written.");
+            failures.forEach(e::addSuppressed);
+            throw e;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            final Thread t = new Thread(r, "png-writer-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
\ No newline at end of file
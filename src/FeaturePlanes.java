@@ -0,0 +1,136 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every per-pixel quantity that the overlay variants in ImageTools compare,
+ * calculated once per pair. Each feature is a plane, so that ImageTools#getOverlay,
+ * #getDebugOverlay and the manual scores are only predicates over the same
+ * few arrays.
+ *
+ * Whenever the pair has a PixelPalette, the planes hold one value for each
+ * entry rather than each pixel, and results are mapped back to the pixels
+ * with #toRaster and #toPixels. Otherwise, every pixel is its own entry.
+ */
+public class FeaturePlanes {
+    public final ImageStats stats;
+    public final int width, height;
+    /** The background pixels and the foreground pixels in front of them. */
+    public final int[] background, foreground;
+    /** The number of entries in each plane. */
+    public final int size;
+    /** The background and foreground pixel of each entry. */
+    public final int[] entryBackground, entryForeground;
+    /** The distance from each foreground pixel to the background pixel behind it. */
+    public final double[] stdDist;
+    /** The distance and relative distance from each foreground pixel to the average background color. */
+    public final double[] dist, relDist;
+    /** Null when every pixel is its own entry. */
+    private final PixelPalette palette;
+    /** The distance from each foreground pixel to its darkened background, by darken amount. */
+    private final Map<Integer, double[]> darkDist = new ConcurrentHashMap<>();
+    /** Only needed by the debug overlay, so it is calculated on demand. */
+    private double[] stdRelDist;
+
+    private FeaturePlanes(ArgbRaster bg, ArgbRaster fg, ImageStats stats) {
+        this.stats = stats;
+        this.width = bg.width;
+        this.height = bg.height;
+        this.background = bg.pixels;
+        this.foreground = crop(fg, width, height);
+        this.palette = PixelPalette.of(background, foreground, width, height);
+        this.size = palette != null ? palette.size : width * height;
+        this.entryBackground = palette != null ? palette.background : background;
+        this.entryForeground = palette != null ? palette.foreground : foreground;
+        this.stdDist = new double[size];
+        this.dist = new double[size];
+        this.relDist = new double[size];
+        final PixelKernels kernels = PixelKernels.get();
+        final int[] avg = new int[size];
+        Arrays.fill(avg, stats.bgAvgColor);
+        kernels.distances(entryBackground, entryForeground, stdDist);
+        kernels.distances(avg, entryForeground, dist);
+        kernels.relativeDistances(avg, entryForeground, relDist);
+    }
+
+    /** Calculates the features of a pair with known stats. */
+    public static FeaturePlanes of(BackgroundProfile profile, ArgbRaster fg, ImageStats stats) {
+        return new FeaturePlanes(profile.raster, fg, stats);
+    }
+
+    /**
+     * Variant of #of which accepts a background without a profile, such as a
+     * band of rows from a larger pair. The stats still describe the whole pair.
+     */
+    public static FeaturePlanes of(ArgbRaster bg, ArgbRaster fg, ImageStats stats) {
+        return new FeaturePlanes(bg, fg, stats);
+    }
+
+    /** Variant of #of which calculates its own stats. */
+    public static FeaturePlanes of(BackgroundProfile profile, ArgbRaster fg) {
+        return of(profile, fg, ImageStats.of(profile, fg));
+    }
+
+    /**
+     * The foreground pixels over a background of the given size. Foregrounds
+     * of the same width share their array, since only its start is read.
+     */
+    private static int[] crop(ArgbRaster fg, int width, int height) {
+        if (fg.width == width) {
+            return fg.pixels;
+        }
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(fg.pixels, y * fg.width, pixels, y * width, width);
+        }
+        return pixels;
+    }
+
+    /** The entry of a single pixel. */
+    public int entryOf(int pixel) {
+        return palette != null ? palette.entryOf(pixel) : pixel;
+    }
+
+    /** Creates a raster covering the background from the color of each entry. */
+    public ArgbRaster toRaster(int[] entries) {
+        if (palette == null) {
+            return new ArgbRaster(width, height, entries);
+        }
+        final ArgbRaster raster = new ArgbRaster(width, height);
+        palette.expand(entries, raster.pixels);
+        return raster;
+    }
+
+    /** Maps a value for each entry to every pixel, in the background's row-major order. */
+    public double[] toPixels(double[] entries) {
+        return palette != null ? palette.expand(entries) : entries;
+    }
+
+    /** The distance from each foreground pixel to the background behind it, darkened by an amount. */
+    public double[] getDarkDistances(int amount) {
+        return darkDist.computeIfAbsent(amount, a -> {
+            final int[] darkened = new int[size];
+            for (int i = 0; i < size; i++) {
+                final int pixel = entryBackground[i];
+                darkened[i] = ArgbRaster.argb(
+                    ArgbRaster.alpha(pixel),
+                    ImageTools.darken(ArgbRaster.red(pixel), a),
+                    ImageTools.darken(ArgbRaster.green(pixel), a),
+                    ImageTools.darken(ArgbRaster.blue(pixel), a)
+                );
+            }
+            final double[] distances = new double[size];
+            PixelKernels.get().distances(darkened, entryForeground, distances);
+            return distances;
+        });
+    }
+
+    /** The relative distance from each foreground pixel to the background pixel behind it. */
+    public synchronized double[] getStdRelDistances() {
+        if (stdRelDist == null) {
+            stdRelDist = new double[size];
+            PixelKernels.get().relativeDistances(entryBackground, entryForeground, stdRelDist);
+        }
+        return stdRelDist;
+    }
+}
\ No newline at end of file
@@ -1,12 +1,24 @@
 import java.io.File;
+import java.util.Arrays;
+import java.util.stream.Stream;
 
-/** A DTO used for transporting everything necessary to generate an overlay. */
+/** A DTO describing every file necessary to generate the overlays for one background. */
 public class FileArch {
     public final File background;
-    public final File[] ores;
+    public final File ores;
 
     public FileArch(File background, File ores) {
         this.background = background;
-        this.ores = ores.listFiles();
+        this.ores = ores;
+    }
+
+    /** Lists the ore sprites in this directory, sorted by name. Nothing is decoded. */
+    public Stream<File> streamOres() {
+        final File[] files = ores.listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null) {
+            return Stream.empty();
+        }
+        Arrays.sort(files);
+        return Arrays.stream(files);
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Utilities for identifying files and images by their contents. */
+public class Hashes {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Generates a hex SHA-256 digest of the input bytes. */
+    public static String sha256(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    /** Generates a hex SHA-256 digest of the input pixels. */
+    public static String sha256(int[] pixels) {
+        final ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4);
+        bytes.asIntBuffer().put(pixels);
+        return sha256(bytes.array());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every JVM", e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Encodes with the PNG writer bundled with ImageIO, optionally at a fixed deflate level. */
+public class ImageIoPngEncoder implements PngEncoder {
+    private final int level;
+
+    public ImageIoPngEncoder(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public void encode(ArgbRaster image, OutputStream os) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        // Always cached in memory. The default may spill into temp files.
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(os)) {
+            writer.setOutput(ios);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (level != DEFAULT_LEVEL) {
+                // The writer uses a deflate level of 9 - round(9 * quality).
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality((9 - level) / 9.0f);
+            }
+            writer.write(null, new IIOImage(image.toImage(), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
\ No newline at end of file
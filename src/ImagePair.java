@@ -1,13 +1,19 @@
-import java.awt.image.BufferedImage;
+import java.io.File;
 
 /** A DTO used for transporting everything necessary to generate an overlay. */
 public class ImagePair {
-    public final BufferedImage background, ore;
-    public final String name;
+    public final File background, ore;
+    public final String directory, name;
 
-    public ImagePair(String name, BufferedImage background, BufferedImage ore) {
+    public ImagePair(String directory, String name, File background, File ore) {
         this.background = background;
         this.ore = ore;
+        this.directory = directory;
         this.name = name;
     }
+
+    /** The path of this pair relative to /ores, which is also used for its outputs. */
+    public String getPath() {
+        return directory + "/" + name;
+    }
 }
\ No newline at end of file
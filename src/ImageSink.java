@@ -0,0 +1,22 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/** The destination for every generated image. */
+public interface ImageSink extends AutoCloseable {
+    /**
+     * Saves an image to the given file. The sink may keep the raster until it
+     * is closed, so callers must not modify it afterward.
+     */
+    void write(ArgbRaster image, File file) throws IOException;
+
+    /** Copies any other file, such as an .mcmeta, alongside the images. The stream is always closed. */
+    void write(FileSpec spec) throws IOException;
+
+    /** The images which couldn't be written. Only complete once the sink is closed. */
+    Set<File> getFailedFiles();
+
+    /** Finishes any pending writes, throwing if any of them failed. */
+    @Override
+    void close() throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+/**
+ * Every statistic used to describe a pair of images, calculated in a single
+ * traversal. This replaces the many separate scans that were previously
+ * needed by debugImage and OverlayData for the same set of numbers.
+ */
+public class ImageStats {
+    /** The average color of each image, counting only opaque pixels. */
+    public final int bgAvgColor, fgAvgColor;
+    /** The average distance between neighboring pixels in each image. */
+    public final double bgDistance, fgDistance;
+    /** The average and max distance from bg to fg, counting only visible bg pixels. */
+    public final double avgDistance, maxDistance;
+    /** The average and max relative (per-channel) distance from bg to fg. */
+    public final double avgRelDistance, maxRelDistance;
+
+    private ImageStats(int bgAvgColor, double bgDistance, Accumulator a) {
+        this.bgAvgColor = bgAvgColor;
+        this.fgAvgColor = a.fgAvgColor();
+        this.bgDistance = bgDistance;
+        this.fgDistance = a.fgDistance();
+        this.avgDistance = a.avgDistance();
+        this.maxDistance = a.maxDist;
+        this.avgRelDistance = a.avgRelDistance();
+        this.maxRelDistance = a.maxRel;
+    }
+
+    /** Calculates every statistic for both images. */
+    public static ImageStats of(ArgbRaster bg, ArgbRaster fg) {
+        final Accumulator a = accumulate(bg.width, bg.height, fg.width, fg.height);
+        a.add(bg.pixels, fg.pixels, 0, Math.max(bg.height, fg.height));
+        return a.finish();
+    }
+
+    /** Variant of #of which reuses the background-only statistics in the profile. */
+    public static ImageStats of(BackgroundProfile profile, ArgbRaster fg) {
+        final ArgbRaster bg = profile.raster;
+        final Accumulator a = new Accumulator(bg.width, bg.height, fg.width, fg.height, false);
+        a.add(bg.pixels, fg.pixels, 0, Math.max(bg.height, fg.height));
+        return new ImageStats(profile.avgColor, profile.avgDistance, a);
+    }
+
+    /**
+     * Starts calculating the statistics for two images of the given sizes
+     * which are read a band of rows at a time, such as by TiledPipeline.
+     * The result is the same as #of.
+     */
+    public static Accumulator accumulate(int bgWidth, int bgHeight, int fgWidth, int fgHeight) {
+        return new Accumulator(bgWidth, bgHeight, fgWidth, fgHeight, true);
+    }
+
+    /** The running totals for a single traversal of both images. */
+    public static class Accumulator {
+        final int bgW, bgH, fgW, fgH;
+        final boolean includeBg;
+        long bgR, bgG, bgB, bgCount;
+        long fgR, fgG, fgB, fgCount;
+        double bgNeighborSum, fgNeighborSum;
+        double distSum, maxDist;
+        double relSum, maxRel;
+
+        Accumulator(int bgW, int bgH, int fgW, int fgH, boolean includeBg) {
+            this.bgW = bgW;
+            this.bgH = bgH;
+            this.fgW = fgW;
+            this.fgH = fgH;
+            this.includeBg = includeBg;
+        }
+
+        /**
+         * Adds the rows from y0 up to y1, which must follow the rows added
+         * before. Both arrays start at row y0 and must also hold the row after
+         * y1 wherever the image has one, since pixels are compared with their
+         * neighbors below.
+         */
+        public void add(int[] bgPixels, int[] fgPixels, int y0, int y1) {
+            final int bgW = this.bgW, bgH = this.bgH, fgW = this.fgW, fgH = this.fgH;
+            for (int y = y0; y < y1; y++) {
+                final boolean inBg = y < bgH, inFg = y < fgH;
+                final int cols = Math.max(inBg ? bgW : 0, inFg ? fgW : 0);
+                for (int x = 0; x < cols; x++) {
+                    final int fgIndex = (y - y0) * fgW + x;
+                    final boolean hasFg = inFg && x < fgW;
+                    if (hasFg) {
+                        final int f = fgPixels[fgIndex];
+                        if (ArgbRaster.alpha(f) > ImageTools.OPACITY_THRESHOLD) {
+                            fgR += ArgbRaster.red(f);
+                            fgG += ArgbRaster.green(f);
+                            fgB += ArgbRaster.blue(f);
+                            fgCount++;
+                        }
+                        if (x < fgW - 1 && y < fgH - 1) {
+                            fgNeighborSum += ImageTools.getDistance(f, fgPixels[fgIndex + 1]);
+                            fgNeighborSum += ImageTools.getDistance(f, fgPixels[fgIndex + fgW]);
+                        }
+                    }
+                    if (!inBg || x >= bgW) {
+                        continue;
+                    }
+                    final int bgIndex = (y - y0) * bgW + x;
+                    final int b = bgPixels[bgIndex];
+                    if (includeBg) {
+                        if (ArgbRaster.alpha(b) > ImageTools.OPACITY_THRESHOLD) {
+                            bgR += ArgbRaster.red(b);
+                            bgG += ArgbRaster.green(b);
+                            bgB += ArgbRaster.blue(b);
+                            bgCount++;
+                        }
+                        if (x < bgW - 1 && y < bgH - 1) {
+                            bgNeighborSum += ImageTools.getDistance(b, bgPixels[bgIndex + 1]);
+                            bgNeighborSum += ImageTools.getDistance(b, bgPixels[bgIndex + bgW]);
+                        }
+                    }
+                    // Pair metrics follow the background's bounds, like OverlayData.
+                    if (!hasFg) {
+                        continue;
+                    }
+                    final int f = fgPixels[fgIndex];
+                    if (ArgbRaster.alpha(b) > ImageTools.TRANSPARENCY_THRESHOLD) {
+                        final double dist = ImageTools.getDistance(b, f);
+                        distSum += dist;
+                        maxDist = dist > maxDist ? dist : maxDist;
+                    }
+                    final double rel = ImageTools.getRelativeDistance(b, f);
+                    relSum += rel;
+                    maxRel = rel > maxRel ? rel : maxRel;
+                }
+            }
+        }
+
+        /** The statistics for every row added, which should be all of them. */
+        public ImageStats finish() {
+            return new ImageStats(bgAvgColor(), bgDistance(), this);
+        }
+
+        int bgAvgColor() {
+            return average(bgR, bgG, bgB, bgCount);
+        }
+
+        int fgAvgColor() {
+            return average(fgR, fgG, fgB, fgCount);
+        }
+
+        double bgDistance() {
+            return bgNeighborSum / (bgW * bgH * 2);
+        }
+
+        double fgDistance() {
+            return fgNeighborSum / (fgW * fgH * 2);
+        }
+
+        double avgDistance() {
+            return distSum / (double) (bgW * bgH);
+        }
+
+        double avgRelDistance() {
+            return relSum / (double) (bgW * bgH);
+        }
+
+        private static int average(long r, long g, long b, long count) {
+            if (count == 0) {
+                return 0;
+            }
+            return ArgbRaster.argb(255, (int) (r / count), (int) (g / count), (int) (b / count));
+        }
+    }
+}
\ No newline at end of file
@@ -1,46 +1,56 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
-import java.awt.image.ConvolveOp;
-import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class ImageTools {
     /** Pixels with higher alpha levels are considered opaque. */
-    private static final int OPACITY_THRESHOLD = 50;
+    static final int OPACITY_THRESHOLD = 50;
     /** Pixels with lower alpha levels are considered transparent. */
-    private static final int TRANSPARENCY_THRESHOLD = 17;
+    static final int TRANSPARENCY_THRESHOLD = 17;
     /** A pixel with no color. */
-    private static final Color EMPTY_PIXEL = new Color(0, 0, 0, 0);
+    private static final int EMPTY_PIXEL = 0;
     /** The maximum "difference" between any two pixels. */
-    private static final double MAX_DIFFERENCE = 441.673;
+    static final double MAX_DIFFERENCE = 441.673;
     /** The maximum possible difference between three color channels. */
     // Edit: this value is not actually the max now that Math.abs is removed. Careful.
-    private static final double MAX_ADJUSTMENT = 510.0;
+    static final double MAX_ADJUSTMENT = 510.0;
     /** Multiplies the alpha levels for push and pull. */
-    private static final double TEXTURE_SHARPEN_RATIO = 2.3;
+    static final double TEXTURE_SHARPEN_RATIO = 2.3;
     private static final double IN_THRESH_SCALE = 1.05;
-    /** The location of the the vignette mask. */
-    private static final String MASK_LOCATION =  "mask.png";
-    /** The mask used for removing edge pixels from larger textures. */
-    private static final BufferedImage VIGNETTE_MASK = Main.loadImage(MASK_LOCATION)
-        .orElseThrow(() -> new RuntimeException("Build error: mask path is invalid."));
+    /** Increment whenever a change to these algorithms changes their output. */
+    private static final int ALGORITHM_VERSION = 2;
+    /** The smallest image which is split between threads by #isolateClusters and Convolution. */
+    static final int PARALLEL_PIXELS = 128 * 128;
+
+    /**
+     * Describes every constant which affects the generated images, so that
+     * BuildManifest can tell when previous outputs are out of date.
+     */
+    static String getParameters() {
+        return "version=" + ALGORITHM_VERSION
+            + ",opacity=" + OPACITY_THRESHOLD
+            + ",transparency=" + TRANSPARENCY_THRESHOLD
+            + ",maxDifference=" + MAX_DIFFERENCE
+            + ",maxAdjustment=" + MAX_ADJUSTMENT
+            + ",sharpen=" + TEXTURE_SHARPEN_RATIO
+            + ",inThreshScale=" + IN_THRESH_SCALE
+            + ",overlay=" + OverlayParameters.DEFAULT
+            + ",mask=" + VignetteMasks.getDigest();
+    }
 
     /**
      * The first of three algorithms which works by attempting to detect
      * harsh edges in a single image and isolate inside of them.
      */
-    private static Color[][] getEdges(Color[][] foreground) {
-        final float[] edgeKernel = {
-            0.0f, -1.0f, 0.0f,
-            -1.0f, 5.0f, -1.0f,
-            0.0f, -1.0f, 0.0f
-        };
-        BufferedImageOp edge = new ConvolveOp(
-            new Kernel(3, 3, edgeKernel),
-            ConvolveOp.EDGE_ZERO_FILL,
-            null
-        );
-        return Main.getColors(edge.filter(Main.getImage(foreground), null));
+    public static ArgbRaster getEdges(ArgbRaster foreground) {
+        return Convolution.SHARPEN.apply(foreground);
+    }
+
+    /** Variant of #getEdges which accepts a color matrix. */
+    public static Color[][] getEdges(Color[][] foreground) {
+        return getEdges(ArgbRaster.fromColors(foreground)).toColors();
     }
 
     /**
@@ -50,21 +60,50 @@ public class ImageTools {
      * Does have the benefit of working in a surprising number of cases
      * without any background image for comparison.
      */
-    public static Color[][] isolateClusters(Color[][] image) {
-        if (image.length < 2 || image[0].length < 2) {
+    public static ArgbRaster isolateClusters(ArgbRaster image) {
+        if (image.width < 2 || image.height < 2) {
             throw new UnsupportedOperationException("Image too small.");
         }
         final double threshold = 0.2;
+        final int w = image.width, h = image.height, stride = (w + 63) >>> 6;
+        // One bit per pixel, with each row padded to a whole number of words
+        // so that separate rows and word columns never share a word.
+        final long[] horizontal = new long[stride * h];
+        final long[] vertical = new long[stride * h];
+        // The first and last rows never toggle in one of the two directions,
+        // so they can never be inside both. The same goes for columns.
+        final boolean parallel = image.pixels.length >= PARALLEL_PIXELS;
+        forEachBand(h - 2, parallel, (from, to) -> {
+            final double[] distances = new double[w];
+            for (int y = from + 1; y <= to; y++) {
+                isolateRow(image, y, threshold, distances, horizontal, stride);
+            }
+        });
+        forEachBand(stride, parallel, (from, to) -> {
+            final double[] distances = new double[h];
+            for (int x = Math.max(1, from << 6); x < Math.min(w - 1, to << 6); x++) {
+                isolateColumn(image, x, threshold, distances, vertical, stride);
+            }
+        });
+        final ArgbRaster clusters = ArgbRaster.empty(w, h);
+        forEachBand(h, parallel, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                for (int word = 0; word < stride; word++) {
+                    long bits = horizontal[y * stride + word] | vertical[y * stride + word];
+                    while (bits != 0) {
+                        final int i = y * w + (word << 6) + Long.numberOfTrailingZeros(bits);
+                        clusters.pixels[i] = image.pixels[i];
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        });
+        return clusters;
+    }
 
-        final Color[][] horizontal = andCheck(
-            isolateLeft(image, threshold),
-            isolateRight(image, threshold)
-        );
-        final Color[][] vertical = andCheck(
-            isolateUp(image, threshold),
-            isolateDown(image, threshold)
-        );
-        return orCheck(horizontal, vertical);
+    /** Variant of #isolateClusters which accepts a color matrix. */
+    public static Color[][] isolateClusters(Color[][] image) {
+        return isolateClusters(ArgbRaster.fromColors(image)).toColors();
     }
 
     /**
@@ -74,121 +113,221 @@ public class ImageTools {
      * perfect, but it is successful in the vast majority of cases for ore sprites
      * using the default texture pack and derived art styles.
      */
-    public static Color[][] getOverlay(Color[][] bg, Color[][] fg) {
-        final Color[][] overlay = new Color[bg.length][bg[0].length];
-        final OverlayData data = new OverlayData(bg, fg);
-        for (int x = 0; x < bg.length; x++) {
-            for (int y = 0; y < bg[0].length; y++) {
-                overlay[x][y] = getOrePixel(bg[x][y], fg[x][y], data);
+    public static ArgbRaster getOverlay(BackgroundProfile profile, ArgbRaster fg, ImageStats stats) {
+        return getOverlay(FeaturePlanes.of(profile, fg, stats), OverlayParameters.DEFAULT);
+    }
+
+    /** Variant of #getOverlay which uses its own constants instead of the defaults. */
+    public static ArgbRaster getOverlay(BackgroundProfile profile, ArgbRaster fg, ImageStats stats, OverlayParameters params) {
+        return getOverlay(FeaturePlanes.of(profile, fg, stats), params);
+    }
+
+    /** Variant of #getOverlay which reuses the features of a pair. */
+    public static ArgbRaster getOverlay(FeaturePlanes features, OverlayParameters params) {
+        final OverlayData data = new OverlayData(features.stats, params);
+        final double[] stdDist = features.stdDist, dist = features.dist, relDist = features.relDist;
+        final double[] darkDist = features.getDarkDistances(data.darken);
+        final int[] fg = features.entryForeground, out = new int[features.size];
+        for (int i = 0; i < out.length; i++) {
+            if (isOrePixel(stdDist[i], darkDist[i], dist[i], relDist[i], data)) {
+                out[i] = fg[i];
             }
         }
-        return overlay;
+        return features.toRaster(out);
+    }
+
+    /** Variant of #getOverlay which calculates its own stats. */
+    public static ArgbRaster getOverlay(BackgroundProfile profile, ArgbRaster fg) {
+        return getOverlay(profile, fg, ImageStats.of(profile, fg));
+    }
+
+    /** Variant of #getOverlay which accepts a background without a profile. */
+    public static ArgbRaster getOverlay(ArgbRaster bg, ArgbRaster fg) {
+        return getOverlay(BackgroundProfile.of(bg), fg);
+    }
+
+    /** Variant of #getOverlay which accepts a color matrix. */
+    public static Color[][] getOverlay(Color[][] bg, Color[][] fg) {
+        return getOverlay(ArgbRaster.fromColors(bg), ArgbRaster.fromColors(fg)).toColors();
     }
 
     /**
      * Determines whether the foreground is different enough from
      * the background. If so, returns it.
+     *
+     * Whole images are handled by #getOverlay, which reads the
+     * same features from a FeaturePlanes instead.
      */
-    public static Color getOrePixel(Color bg, Color fg, OverlayData data) {
+    public static int getOrePixel(int bg, int fg, OverlayData data) {
+        final int fgR = ArgbRaster.red(fg), fgG = ArgbRaster.green(fg), fgB = ArgbRaster.blue(fg);
+        final int bgR = ArgbRaster.red(bg), bgG = ArgbRaster.green(bg), bgB = ArgbRaster.blue(bg);
+        final double stdDist = getDistance(fgR - bgR, fgG - bgG, fgB - bgB);
+        final double darkDist = getDistance(fgR - darken(bgR, data.darken), fgG - darken(bgG, data.darken), fgB - darken(bgB, data.darken));
+        final int r = fgR - data.bgR, g = fgG - data.bgG, b = fgB - data.bgB;
+        return isOrePixel(stdDist, darkDist, getDistance(r, g, b), getRelativeDistance(r, g, b), data) ? fg : EMPTY_PIXEL;
+    }
+
+    /** The tests behind #getOrePixel, given the features of a single pixel. */
+    static boolean isOrePixel(double stdDist, double darkDist, double dist, double relDist, OverlayData data) {
         // First, check to remove any pixels that are almost
         // the same in both images, keeping any that are
         // clearly very different.
-        final Vec3I stdDiff = subtract(bg, fg);
-        final double stdDist = getDistance(stdDiff);
-        if (stdDist > 0.7 * data.maxDist) {
-            return fg;
-        } else if (stdDist < 0.1 * data.maxDist) {
-            return EMPTY_PIXEL;
+        if (stdDist > data.keepDist) {
+            return true;
+        } else if (stdDist < data.dropDist) {
+            return false;
         }
         // Next, filter out any pixels that are specifically
         // darker versions of the background image.
-        final Color darkened = darken(bg, 45);
-        final Vec3I darkDiff = subtract(darkened, fg);
-        final double darkDist = getDistance(darkDiff);
-        if (darkDist < 0.125 * (data.maxRel + 0.001 / data.bgDist + 0.001)) {
-            return EMPTY_PIXEL;
+        if (darkDist < data.darkDist) {
+            return false;
         }
         // Then, compare the difference in colors in the
         // foreground with the average color of the
         // background, focusing especially on the differences
-        // per channel.
-        final Vec3I diff = subtract(data.bgAvg, fg);
-        final double dist = getDistance(diff);
-        final double relDist = getRelativeDistance(diff);
-        // Colorful backgrounds are consistently more difficult
-        // to extract, while still having enough flexibility
-        // that a single value can be a blanket fix.
-        final double threshold = data.bgDist > 0.05 ? 1.2 : 0.2;
-        if (dist + relDist * 10.0 > threshold) {
-            return fg;
-        }
-        return EMPTY_PIXEL;
+        // per channel. Colorful backgrounds are consistently
+        // more difficult to extract, while still having enough
+        // flexibility that a single value can be a blanket fix.
+        return dist + relDist * data.relWeight > data.threshold;
+    }
+
+    /** Variant of #getOrePixel which accepts colors. */
+    public static Color getOrePixel(Color bg, Color fg, OverlayData data) {
+        return new Color(getOrePixel(bg.getRGB(), fg.getRGB(), data), true);
     }
 
     /** Variant of #getOrePixel which indicates why each pixel was kept or lost. */
-    public static Color debugOrePixel(Color bg, Color fg, OverlayData data) {
-        final Vec3I stdDiff = subtract(bg, fg);
-        final double stdDist = getDistance(stdDiff);
-        final double stdRelDist = getRelativeDistance(stdDiff);
-        if (stdDist > 0.7 * data.maxDist) {
-            return new Color(31, 31, 31, 96);
+    public static int debugOrePixel(int bg, int fg, OverlayData data) {
+        final int fgR = ArgbRaster.red(fg), fgG = ArgbRaster.green(fg), fgB = ArgbRaster.blue(fg);
+        final int bgR = ArgbRaster.red(bg), bgG = ArgbRaster.green(bg), bgB = ArgbRaster.blue(bg);
+        final double stdDist = getDistance(fgR - bgR, fgG - bgG, fgB - bgB);
+        final double stdRelDist = getRelativeDistance(fgR - bgR, fgG - bgG, fgB - bgB);
+        final double darkDist = getDistance(fgR - darken(bgR, data.darken), fgG - darken(bgG, data.darken), fgB - darken(bgB, data.darken));
+        final int r = fgR - data.bgR, g = fgG - data.bgG, b = fgB - data.bgB;
+        return debugOrePixel(stdDist, stdRelDist, darkDist, getDistance(r, g, b), getRelativeDistance(r, g, b), data);
+    }
+
+    /** The tests behind #debugOrePixel, given the features of a single pixel. */
+    private static int debugOrePixel(double stdDist, double stdRelDist, double darkDist, double dist, double relDist, OverlayData data) {
+        if (stdDist > data.keepDist) {
+            return ArgbRaster.argb(96, 31, 31, 31);
         } else if (stdDist + stdRelDist < 0.25 * data.maxDist) {
-            return new Color(255, 255, 255, 96);
+            return ArgbRaster.argb(96, 255, 255, 255);
         }
-        final Color darkened = darken(bg, 45);
-        final Vec3I darkDiff = subtract(darkened, fg);
-        final double darkDist = getDistance(darkDiff);
-        if (darkDist < 0.125 * (data.maxRel + 0.001 / data.bgDist + 0.001)) {
-            return new Color(255, 31, 31, 96);
+        if (darkDist < data.darkDist) {
+            return ArgbRaster.argb(96, 255, 31, 31);
         }
-        final Vec3I diff = subtract(data.bgAvg, fg);
-        final double dist = getDistance(diff);
-        final double relDist = getRelativeDistance(diff);
-        final double threshold = data.bgDist > 0.05 ? 1.2 : 0.2;
-        if (dist + relDist * 10.0 > threshold) {
-            return new Color(31, 255, 31, 96);
+        if (dist + relDist * data.relWeight > data.threshold) {
+            return ArgbRaster.argb(96, 31, 255, 31);
         }
         return EMPTY_PIXEL;
     }
 
+    /** Variant of #debugOrePixel which accepts colors. */
+    public static Color debugOrePixel(Color bg, Color fg, OverlayData data) {
+        return new Color(debugOrePixel(bg.getRGB(), fg.getRGB(), data), true);
+    }
+
+    /** Generates #debugOrePixel for every pixel of a pair, showing why each one was kept or lost. */
+    public static ArgbRaster getDebugOverlay(FeaturePlanes features) {
+        final OverlayData data = new OverlayData(features.stats);
+        final double[] stdDist = features.stdDist, dist = features.dist, relDist = features.relDist;
+        final double[] stdRelDist = features.getStdRelDistances(), darkDist = features.getDarkDistances(data.darken);
+        final int[] out = new int[features.size];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = debugOrePixel(stdDist[i], stdRelDist[i], darkDist[i], dist[i], relDist[i], data);
+        }
+        return features.toRaster(out);
+    }
+
     /**
      * Variant of #getOverlay which places less emphasis on stats and more
      * on a known level of difference to achieve.
      */
-    public static Color[][] getOverlayManual(Color[][] bg, Color[][] fg, double threshold) {
-        final Color[][] overlay = new Color[bg.length][bg[0].length];
-        final OverlayData data = new OverlayData(bg, fg);
-        for (int x = 0; x < bg.length; x++) {
-            for (int y = 0; y < bg[0].length; y++) {
-                overlay[x][y] = getOrePixelManual(bg[x][y], fg[x][y], data, threshold);
+    public static ArgbRaster getOverlayManual(BackgroundProfile profile, ArgbRaster fg, ImageStats stats, double threshold) {
+        return getOverlayManual(FeaturePlanes.of(profile, fg, stats), threshold);
+    }
+
+    /** Variant of #getOverlayManual which reuses the features of a pair. */
+    public static ArgbRaster getOverlayManual(FeaturePlanes features, double threshold) {
+        final OverlayData data = new OverlayData(features.stats);
+        final double[] stdDist = features.stdDist, dist = features.dist, relDist = features.relDist;
+        final int[] fg = features.entryForeground, out = new int[features.size];
+        for (int i = 0; i < out.length; i++) {
+            if (getManualScore(stdDist[i], dist[i], relDist[i], data) > threshold) {
+                out[i] = fg[i];
             }
         }
-        return overlay;
+        return features.toRaster(out);
+    }
+
+    /** Variant of #getOverlayManual which calculates its own stats. */
+    public static ArgbRaster getOverlayManual(BackgroundProfile profile, ArgbRaster fg, double threshold) {
+        return getOverlayManual(profile, fg, ImageStats.of(profile, fg), threshold);
+    }
+
+    /** Variant of #getOverlayManual which accepts a background without a profile. */
+    public static ArgbRaster getOverlayManual(ArgbRaster bg, ArgbRaster fg, double threshold) {
+        return getOverlayManual(BackgroundProfile.of(bg), fg, threshold);
+    }
+
+    /** Variant of #getOverlayManual which accepts a color matrix. */
+    public static Color[][] getOverlayManual(Color[][] bg, Color[][] fg, double threshold) {
+        return getOverlayManual(ArgbRaster.fromColors(bg), ArgbRaster.fromColors(fg), threshold).toColors();
     }
 
     /** Variant of #getOrePixel which places more importance on the threshold. */
-    public static Color getOrePixelManual(Color bg, Color fg, OverlayData data, double threshold) {
+    public static int getOrePixelManual(int bg, int fg, OverlayData data, double threshold) {
+        final int fgR = ArgbRaster.red(fg), fgG = ArgbRaster.green(fg), fgB = ArgbRaster.blue(fg);
+        final double stdDist = getDistance(fgR - ArgbRaster.red(bg), fgG - ArgbRaster.green(bg), fgB - ArgbRaster.blue(bg));
+        final int r = fgR - data.bgR, g = fgG - data.bgG, b = fgB - data.bgB;
+        return getManualScore(stdDist, getDistance(r, g, b), getRelativeDistance(r, g, b), data) > threshold ? fg : EMPTY_PIXEL;
+    }
+
+    /**
+     * Calculates the score which #getOrePixelManual compares to its threshold,
+     * given the features of a single pixel. Pixels which are kept or removed
+     * regardless of the threshold score positive or negative infinity, respectively.
+     */
+    private static double getManualScore(double stdDist, double dist, double relDist, OverlayData data) {
         // First, check to remove any pixels that are almost
         // the same in both images, keeping any that are
         // clearly very different.
-        final Vec3I stdDiff = subtract(bg, fg);
-        final double stdDist = getDistance(stdDiff);
-        if (stdDist > 0.7 * data.maxDist) {
-            return fg;
-        } else if (stdDist < 0.1 * data.maxDist) {
-            return EMPTY_PIXEL;
+        if (stdDist > data.keepDist) {
+            return Double.POSITIVE_INFINITY;
+        } else if (stdDist < data.dropDist) {
+            return Double.NEGATIVE_INFINITY;
         }
         // Then, compare the difference in colors in the
         // foreground with the average color of the
         // background, focusing especially on the differences
         // per channel.
-        final Vec3I diff = subtract(data.bgAvg, fg);
-        final double dist = getDistance(diff);
-        final double relDist = getRelativeDistance(diff);
-        if (dist + relDist * 10.0 > threshold) {
-            return fg;
+        return dist + relDist * data.relWeight;
+    }
+
+    /**
+     * Generates a map of every pixel's #getManualScore in the background's
+     * row-major order. A pixel is kept by #getOverlayManual if its score
+     * is greater than the threshold.
+     */
+    public static double[] getManualScores(BackgroundProfile profile, ArgbRaster fg, ImageStats stats) {
+        return getManualScores(FeaturePlanes.of(profile, fg, stats));
+    }
+
+    /** Variant of #getManualScores which reuses the features of a pair. */
+    public static double[] getManualScores(FeaturePlanes features) {
+        final double[] scores = new double[features.size];
+        final OverlayData data = new OverlayData(features.stats);
+        final double[] stdDist = features.stdDist, dist = features.dist, relDist = features.relDist;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = getManualScore(stdDist[i], dist[i], relDist[i], data);
         }
-        return EMPTY_PIXEL;
+        return features.toPixels(scores);
+    }
+
+    /** Variant of #getOrePixelManual which accepts colors. */
+    public static Color getOrePixelManual(Color bg, Color fg, OverlayData data, double threshold) {
+        return new Color(getOrePixelManual(bg.getRGB(), fg.getRGB(), data, threshold), true);
     }
 
     /**
@@ -196,259 +335,283 @@ public class ImageTools {
      * texture of the original background behind it using a sort of push
      * and pull method.
      */
-    public static Color[][] shadeOverlay(Color[][] overlay, Color[][] bg, Color[][] fg) {
-        final Color[][] mask = ensureSizeParity(Main.getColors(VIGNETTE_MASK), fg);
-        final Color[][] bgScaled = ensureSizeParity(bg, fg);
+    public static ArgbRaster shadeOverlay(ArgbRaster overlay, BackgroundProfile bg, ArgbRaster fg) {
+        final byte[] mask = VignetteMasks.get(fg.width, fg.height);
         // This is an old line that looks like a bug, but it
-        // works and I'm keeping it.
-        final Color[][] bgFilled = fillColors(bgScaled, getAverageColor(bg));
-        final Color[][] texturePixels = convertToPushAndPull(bgFilled, fg);
-        final Color[][] maskedTexture = removePixels(texturePixels, mask);
+        // works and I'm keeping it. The scaled background is
+        // entirely replaced by its average color, so only its
+        // size (the same as the sprite's) matters.
+        return shadeOverlay(overlay, bg.getFilled(fg.width, fg.height), fg, mask);
+    }
+
+    /**
+     * Variant of #shadeOverlay which accepts the background already filled
+     * with its average color and the alpha levels of the mask, so that it
+     * can shade a band of rows at a time.
+     */
+    static ArgbRaster shadeOverlay(ArgbRaster overlay, ArgbRaster bgFilled, ArgbRaster fg, byte[] mask) {
+        final ArgbRaster texturePixels = convertToPushAndPull(bgFilled, fg);
+        final ArgbRaster maskedTexture = removePixels(texturePixels, mask);
         return overlay(maskedTexture, overlay);
     }
 
-    /** Pupnewfster's original algorithm for generating dense ore sprites. */
-    public static Color[][] shiftImage(Color[][] image) {
-        final int w = image.length, h = image[0].length;
-        final Color[][] shifted = new Color[w][h];
-        final int frames = h / w;
-        assert(1.0 * h / w == frames);
-        for (int f = 0; f < frames; f++) {
-            for (int x = 0; x < w; x++) {
-                for (int y = 0; y < h; y++) {
-                    int imageY = f * w + y;
-                    shifted[x][imageY] = getAverageColor(
-                        image[x][imageY],
-                        fromIndex(image, x - 1, imageY, f),
-                        fromIndex(image, x + 1, imageY, f),
-                        fromIndex(image, x, imageY - 1, f),
-                        fromIndex(image, x, imageY + 1, f)
-                    );
-                }
-            }
-        }
-        return shifted;
+    /** Variant of #shadeOverlay which accepts a background without a profile. */
+    public static ArgbRaster shadeOverlay(ArgbRaster overlay, ArgbRaster bg, ArgbRaster fg) {
+        return shadeOverlay(overlay, BackgroundProfile.of(bg), fg);
     }
 
-    private static Color[][] isolateUp(Color[][] image, double threshold) {
-        final Color[][] clusters = getEmptyMatrix(image.length, image[0].length);
-        for (int x = 0; x < image.length; x++) {
-            double comp = threshold;
-            boolean inside = false;
-            for (int y = 0; y < image[0].length; y++) {
-                if (inside) {
-                    comp *= IN_THRESH_SCALE;
-                    clusters[x][y] = image[x][y];
-                }
-                if (x == image.length - 1 || y == image[0].length - 1) {
-                    continue;
-                }
-                if (getDistance(image[x][y], image[x][y+1]) > comp) {
-                    comp /= IN_THRESH_SCALE;
-                    inside = !inside;
-                }
-            }
+    /** Variant of #shadeOverlay which accepts a color matrix. */
+    public static Color[][] shadeOverlay(Color[][] overlay, Color[][] bg, Color[][] fg) {
+        final ArgbRaster image = ArgbRaster.fromColors(overlay);
+        final Color[][] shaded = shadeOverlay(image, ArgbRaster.fromColors(bg), ArgbRaster.fromColors(fg)).toColors();
+        // The overlay is blended in place.
+        for (int x = 0; x < overlay.length; x++) {
+            System.arraycopy(shaded[x], 0, overlay[x], 0, overlay[0].length);
         }
-        return clusters;
+        return overlay;
     }
 
-    private static Color[][] isolateRight(Color[][] image, double threshold) {
-        final Color[][] clusters = getEmptyMatrix(image.length, image[0].length);
-        for (int y = 0; y < image[0].length; y++) {
-            double comp = threshold;
-            boolean inside = false;
-            for (int x = 0; x < image.length; x++) {
-                if (inside) {
-                    comp *= IN_THRESH_SCALE;
-                    clusters[x][y] = image[x][y];
-                }
-                if (x == image.length - 1 || y == image[0].length - 1) {
-                    continue;
-                }
-                if (getDistance(image[x][y], image[x+1][y]) > comp) {
-                    comp /= IN_THRESH_SCALE;
-                    inside = !inside;
-                }
-            }
-        }
-        return clusters;
+    /**
+     * Pupnewfster's original algorithm for generating dense ore sprites. Each
+     * distinct frame of an animation is shifted independently.
+     */
+    public static ArgbRaster shiftImage(ArgbRaster image) {
+        final SpriteFrames frames = SpriteFrames.of(image);
+        return frames.stack(frames.map(ImageTools::shiftFrame));
     }
 
-    private static Color[][] isolateDown(Color[][] image, double threshold) {
-        final Color[][] clusters = getEmptyMatrix(image.length, image[0].length);
-        for (int x = image.length - 1; x >= 0; x--) {
-            double comp = threshold;
-            boolean inside = false;
-            for (int y = image[0].length - 1; y >= 0; y--) {
-                if (inside) {
-                    comp *= IN_THRESH_SCALE;
-                    clusters[x][y] = image[x][y];
-                }
-                if (x == 0 || y == 0) {
-                    continue;
-                }
-                if (getDistance(image[x][y], image[x][y-1]) > comp) {
-                    comp /= IN_THRESH_SCALE;
-                    inside = !inside;
-                }
+    /**
+     * Shifts the first square frame of the image for #shiftImage. Any rows
+     * past the first frame are left empty.
+     */
+    private static ArgbRaster shiftFrame(ArgbRaster image) {
+        final int w = image.width;
+        final ArgbRaster shifted = new ArgbRaster(w, image.height);
+        if (image.height < w) {
+            return shifted;
+        }
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < w; y++) {
+                shifted.set(x, y, getAverageColor(
+                    image.get(x, y),
+                    fromIndex(image, x - 1, y, 0),
+                    fromIndex(image, x + 1, y, 0),
+                    fromIndex(image, x, y - 1, 0),
+                    fromIndex(image, x, y + 1, 0)
+                ));
             }
         }
-        return clusters;
+        return shifted;
     }
 
-    private static Color[][] isolateLeft(Color[][] image, double threshold) {
-        final Color[][] clusters = getEmptyMatrix(image.length, image[0].length);
-        for (int y = image[0].length - 1; y >= 0; y--) {
-            double comp = threshold;
-            boolean inside = false;
-            for (int x = image.length - 1; x >= 0; x--) {
-                if (inside) {
-                    comp *= IN_THRESH_SCALE;
-                    clusters[x][y] = image[x][y];
-                }
-                if (x == 0 || y == 0) {
-                    continue;
-                }
-                if (getDistance(image[x][y], image[x-1][y]) > comp) {
-                    comp /= IN_THRESH_SCALE;
-                    inside = !inside;
-                }
+    /** Variant of #shiftImage which accepts a color matrix. */
+    public static Color[][] shiftImage(Color[][] image) {
+        return shiftImage(ArgbRaster.fromColors(image)).toColors();
+    }
+
+    /**
+     * Marks every pixel in the row which is inside of a cluster when scanning
+     * both left to right and right to left. Each scan toggles between inside
+     * and outside whenever it crosses a large enough change in color.
+     */
+    private static void isolateRow(ArgbRaster image, int y, double threshold, double[] distances, long[] bits, int stride) {
+        final int w = image.width, row = y * w, words = y * stride;
+        for (int x = 0; x < w - 1; x++) {
+            distances[x] = getDistance(image.pixels[row + x], image.pixels[row + x + 1]);
+        }
+        double comp = threshold;
+        boolean inside = false;
+        for (int x = 0; x < w; x++) {
+            if (inside) {
+                comp *= IN_THRESH_SCALE;
+                bits[words + (x >>> 6)] |= 1L << x;
+            }
+            if (x < w - 1 && distances[x] > comp) {
+                comp /= IN_THRESH_SCALE;
+                inside = !inside;
+            }
+        }
+        comp = threshold;
+        inside = false;
+        for (int x = w - 1; x >= 0; x--) {
+            if (inside) {
+                comp *= IN_THRESH_SCALE;
+            } else {
+                bits[words + (x >>> 6)] &= ~(1L << x);
+            }
+            if (x > 0 && distances[x - 1] > comp) {
+                comp /= IN_THRESH_SCALE;
+                inside = !inside;
             }
         }
-        return clusters;
     }
 
-    private static Color[][] andCheck(Color[][] bg, Color[][] fg) {
-        final Color[][] clusters = getEmptyMatrix(bg.length, bg.length);
-        for (int x = 0; x < bg.length; x++) {
-            for (int y = 0; y < bg[0].length; y++) {
-                if (bg[x][y] != EMPTY_PIXEL && fg[x][y] != EMPTY_PIXEL) {
-                    clusters[x][y] = bg[x][y];
-                }
+    /** Variant of #isolateRow which scans top to bottom and bottom to top. */
+    private static void isolateColumn(ArgbRaster image, int x, double threshold, double[] distances, long[] bits, int stride) {
+        final int w = image.width, h = image.height, word = x >>> 6;
+        final long bit = 1L << x;
+        for (int y = 0; y < h - 1; y++) {
+            distances[y] = getDistance(image.pixels[y * w + x], image.pixels[(y + 1) * w + x]);
+        }
+        double comp = threshold;
+        boolean inside = false;
+        for (int y = 0; y < h; y++) {
+            if (inside) {
+                comp *= IN_THRESH_SCALE;
+                bits[y * stride + word] |= bit;
+            }
+            if (y < h - 1 && distances[y] > comp) {
+                comp /= IN_THRESH_SCALE;
+                inside = !inside;
+            }
+        }
+        comp = threshold;
+        inside = false;
+        for (int y = h - 1; y >= 0; y--) {
+            if (inside) {
+                comp *= IN_THRESH_SCALE;
+            } else {
+                bits[y * stride + word] &= ~bit;
+            }
+            if (y > 0 && distances[y - 1] > comp) {
+                comp /= IN_THRESH_SCALE;
+                inside = !inside;
             }
         }
-        return clusters;
     }
 
-    private static Color[][] orCheck(Color[][] bg, Color[][] fg) {
-        final Color[][] clusters = getEmptyMatrix(bg.length, bg.length);
-        for (int x = 0; x < bg.length; x++) {
-            for (int y = 0; y < bg[0].length; y++) {
-                if (bg[x][y] != EMPTY_PIXEL) {
-                    clusters[x][y] = bg[x][y];
-                } else if (fg[x][y] != EMPTY_PIXEL) {
-                    clusters[x][y] = fg[x][y];
-                }
-            }
+    /**
+     * Splits [0, count) into bands and runs the body over each of them,
+     * optionally in parallel. Callers only ask for parallel bands on images
+     * of at least PARALLEL_PIXELS, where the work outweighs forking.
+     */
+    static void forEachBand(int count, boolean parallel, BandBody body) {
+        final int bands = !parallel ? 1 : Math.min(count, ForkJoinPool.getCommonPoolParallelism() * 4);
+        if (bands <= 1) {
+            body.run(0, count);
+            return;
         }
-        return clusters;
+        IntStream.range(0, bands).parallel().forEach(b -> body.run(count * b / bands, count * (b + 1) / bands));
+    }
+
+    interface BandBody {
+        void run(int from, int to);
     }
 
     /** Variant of getAverageColor() which accepts a matrix. */
+    public static int getAverageColor(ArgbRaster image) {
+        return getAverageColor(image.pixels);
+    }
+
+    /** Variant of getAverageColor() which accepts a color matrix. */
     public static Color getAverageColor(Color[][] image) {
-        return getAverageColor(matrixToArray(image));
+        return new Color(getAverageColor(ArgbRaster.fromColors(image)), true);
     }
 
     /** Gets the average color from an array of colors. */
-    public static Color getAverageColor(Color... colors) {
-        int r = 0, g = 0, b = 0;
+    public static int getAverageColor(int... colors) {
+        long r = 0, g = 0, b = 0;
         int count = 0;
-        for (Color color : colors) {
-            if (color.getAlpha() > OPACITY_THRESHOLD) {
-                r += color.getRed();
-                g += color.getGreen();
-                b += color.getBlue();
+        for (int color : colors) {
+            if (ArgbRaster.alpha(color) > OPACITY_THRESHOLD) {
+                r += ArgbRaster.red(color);
+                g += ArgbRaster.green(color);
+                b += ArgbRaster.blue(color);
                 count++;
             }
         }
         if (count == 0) {
             return EMPTY_PIXEL;
         }
-        return new Color(r / count, g / count, b / count);
+        return ArgbRaster.argb(255, (int) (r / count), (int) (g / count), (int) (b / count));
     }
 
-    /** Converts a 2D array of colors to a 1D array. */
-    private static Color[] matrixToArray(Color[][] matrix) {
-        final Color[] array = new Color[matrix.length * matrix[0].length];
-        int index = 0;
-        for (int x = 0; x < matrix.length; x++) {
-            for (int y = 0; y < matrix[0].length; y++) {
-                array[index++] = matrix[x][y];
-            }
+    /** Variant of #getAverageColor which accepts colors. */
+    public static Color getAverageColor(Color... colors) {
+        final int[] pixels = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            pixels[i] = colors[i].getRGB();
         }
-        return array;
+        return new Color(getAverageColor(pixels), true);
     }
 
     /** Determines the average difference from the input color. */
-    public static double getAverageDistance(Color[][] image, Color[][] from) {
+    public static double getAverageDistance(ArgbRaster image, ArgbRaster from) {
         double sum = 0.0;
-        for (int x = 0; x < image.length; x++) {
-            for (int y = 0; y < image[0].length; y++) {
-                if (image[x][y].getAlpha() > TRANSPARENCY_THRESHOLD) {
-                    sum += getDistance(image[x][y], from[x][y]);
+        for (int y = 0; y < image.height; y++) {
+            for (int x = 0; x < image.width; x++) {
+                final int pixel = image.get(x, y);
+                if (ArgbRaster.alpha(pixel) > TRANSPARENCY_THRESHOLD) {
+                    sum += getDistance(pixel, from.get(x, y));
                 }
             }
         }
-        return sum / (double) (image.length * image[0].length);
+        return sum / (double) (image.width * image.height);
+    }
+
+    /** Variant of #getAverageDistance which accepts color matrices. */
+    public static double getAverageDistance(Color[][] image, Color[][] from) {
+        return getAverageDistance(ArgbRaster.fromColors(image), ArgbRaster.fromColors(from));
     }
 
     /** Determines the average difference from the input color. */
-    public static double getMaxDistance(Color[][] image, Color[][] from) {
+    public static double getMaxDistance(ArgbRaster image, ArgbRaster from) {
         double num = 0.0;
-        for (int x = 0; x < image.length; x++) {
-            for (int y = 0; y < image[0].length; y++) {
-                if (image[x][y].getAlpha() > TRANSPARENCY_THRESHOLD) {
-                    num = getMax(num, getDistance(image[x][y], from[x][y]));
+        for (int y = 0; y < image.height; y++) {
+            for (int x = 0; x < image.width; x++) {
+                final int pixel = image.get(x, y);
+                if (ArgbRaster.alpha(pixel) > TRANSPARENCY_THRESHOLD) {
+                    num = getMax(num, getDistance(pixel, from.get(x, y)));
                 }
             }
         }
         return num;
     }
 
+    /** Variant of #getMaxDistance which accepts color matrices. */
+    public static double getMaxDistance(Color[][] image, Color[][] from) {
+        return getMaxDistance(ArgbRaster.fromColors(image), ArgbRaster.fromColors(from));
+    }
+
     /** Determines the average difference from the input color. */
-    public static double getAverageDistance(Color[][] image) {
+    public static double getAverageDistance(ArgbRaster image) {
         double sum = 0.0;
-        for (int x = 0; x < image.length - 1; x++) {
-            for (int y = 0; y < image[0].length - 1; y++) {
-                sum += getDistance(image[x][y], image[x+1][y]);
-                sum += getDistance(image[x][y], image[x][y+1]);
+        for (int y = 0; y < image.height - 1; y++) {
+            for (int x = 0; x < image.width - 1; x++) {
+                sum += getDistance(image.get(x, y), image.get(x + 1, y));
+                sum += getDistance(image.get(x, y), image.get(x, y + 1));
             }
         }
-        return sum / (image.length * image[0].length * 2);
+        return sum / (image.width * image.height * 2);
     }
 
-    /** Generates a blank image. */
-    private static Color[][] getEmptyMatrix(int w, int h) {
-        return fillColors(new Color[w][h], EMPTY_PIXEL);
+    /** Variant of #getAverageDistance which accepts a color matrix. */
+    public static double getAverageDistance(Color[][] image) {
+        return getAverageDistance(ArgbRaster.fromColors(image));
     }
 
-    private static Vec3I subtract(Color background, Color foreground) {
-        final int r = foreground.getRed() - background.getRed();
-        final int g = foreground.getGreen() - background.getGreen();
-        final int b = foreground.getBlue() - background.getBlue();
+    private static Vec3I subtract(int background, int foreground) {
+        final int r = ArgbRaster.red(foreground) - ArgbRaster.red(background);
+        final int g = ArgbRaster.green(foreground) - ArgbRaster.green(background);
+        final int b = ArgbRaster.blue(foreground) - ArgbRaster.blue(background);
         return new Vec3I(r, g, b);
     }
 
     /** Todo: saving this in case it may help with variable opacity in the future. */
-    private static Color subtractColor(Color background, Color foreground) {
+    private static int subtractColor(int background, int foreground) {
         final Vec3I diff = subtract(background, foreground);
         final int r = diff.x < 0 ? 0 : diff.x;
         final int g = diff.y < 0 ? 0 : diff.y;
         final int b = diff.z < 0 ? 0 : diff.z;
-        return new Color(r, g, b); // Todo: alpha
+        return ArgbRaster.argb(255, r, g, b); // Todo: alpha
     }
 
-    private static double getDistance(Vec3I difference) {
-        final int r = difference.x;
-        final int g = difference.y;
-        final int b = difference.z;
+    /** Calculates the distance of a per-channel difference without allocating a Vec3I. */
+    static double getDistance(int r, int g, int b) {
         return Math.sqrt((r * r) + (g * g) + (b * b)) / MAX_DIFFERENCE;
     }
 
-    private static double getRelativeDistance(Vec3I difference) {
-        final int rO = difference.x;
-        final int gO = difference.y;
-        final int bO = difference.z;
+    static double getRelativeDistance(int rO, int gO, int bO) {
         // Get lowest number.
         final int min = getMin(getMin(rO, gO), bO);
         // Get ratings of which channels are the most different;
@@ -459,48 +622,72 @@ public class ImageTools {
         return Math.sqrt((rS * rS) + (gS * gS) + (bS * bS)) / MAX_ADJUSTMENT;
     }
 
-    public static double getAvgRelDist(Color[][] background, Color[][] foreground) {
+    /** Calculates the relative distance between two colors. */
+    public static double getRelativeDistance(int background, int foreground) {
+        return getRelativeDistance(
+            ArgbRaster.red(foreground) - ArgbRaster.red(background),
+            ArgbRaster.green(foreground) - ArgbRaster.green(background),
+            ArgbRaster.blue(foreground) - ArgbRaster.blue(background)
+        );
+    }
+
+    public static double getAvgRelDist(ArgbRaster background, ArgbRaster foreground) {
         double num = 0;
-        for (int x = 0; x < background.length; x++) {
-            for (int y = 0; y < background[0].length; y++) {
-                final Vec3I diff = subtract(background[x][y], foreground[x][y]);
-                num += getRelativeDistance(diff);
+        for (int y = 0; y < background.height; y++) {
+            for (int x = 0; x < background.width; x++) {
+                num += getRelativeDistance(background.get(x, y), foreground.get(x, y));
             }
         }
-        return num / (double) (background.length * background[0].length);
+        return num / (double) (background.width * background.height);
     }
 
-    public static double getMaxRelDist(Color[][] background, Color[][] foreground) {
+    /** Variant of #getAvgRelDist which accepts color matrices. */
+    public static double getAvgRelDist(Color[][] background, Color[][] foreground) {
+        return getAvgRelDist(ArgbRaster.fromColors(background), ArgbRaster.fromColors(foreground));
+    }
+
+    public static double getMaxRelDist(ArgbRaster background, ArgbRaster foreground) {
         double num = 0;
-        for (int x = 0; x < background.length; x++) {
-            for (int y = 0; y < background[0].length; y++) {
-                final Vec3I diff = subtract(background[x][y], foreground[x][y]);
-                num = getMax(num, getRelativeDistance(diff));
+        for (int y = 0; y < background.height; y++) {
+            for (int x = 0; x < background.width; x++) {
+                num = getMax(num, getRelativeDistance(background.get(x, y), foreground.get(x, y)));
             }
         }
         return num;
     }
 
-    /** Returns a darker version of the input Color. */
-    private static Color darken(Color c, int amount) {
-        int r = c.getRed() - amount;
-        int g = c.getGreen() - amount;
-        int b = c.getBlue() - amount;
-        r = r < 0 ? 0 : r;
-        g = g < 0 ? 0 : g;
-        b = b < 0 ? 0 : b;
-        return new Color(r, g, b);
+    /** Variant of #getMaxRelDist which accepts color matrices. */
+    public static double getMaxRelDist(Color[][] background, Color[][] foreground) {
+        return getMaxRelDist(ArgbRaster.fromColors(background), ArgbRaster.fromColors(foreground));
+    }
+
+    /** Returns a darker version of a single color channel. */
+    static int darken(int channel, int amount) {
+        final int c = channel - amount;
+        return c < 0 ? 0 : c;
     }
 
     /** Calculates the distance between two colors. */
+    public static double getDistance(int background, int foreground) {
+        return getDistance(
+            ArgbRaster.red(foreground) - ArgbRaster.red(background),
+            ArgbRaster.green(foreground) - ArgbRaster.green(background),
+            ArgbRaster.blue(foreground) - ArgbRaster.blue(background)
+        );
+    }
+
+    /** Variant of #getDistance which accepts colors. */
     public static double getDistance(Color background, Color foreground) {
-        final int r = foreground.getRed() - background.getRed();
-        final int g = foreground.getGreen() - background.getGreen();
-        final int b = foreground.getBlue() - background.getBlue();
-        return Math.sqrt((r * r) + (g * g) + (b * b)) / MAX_DIFFERENCE;
+        return getDistance(background.getRGB(), foreground.getRGB());
     }
 
     /** Fills an entire image with a single color. */
+    public static ArgbRaster fillColors(ArgbRaster image, int color) {
+        Arrays.fill(image.pixels, color);
+        return image;
+    }
+
+    /** Variant of #fillColors which accepts a color matrix. */
     public static Color[][] fillColors(Color[][] image, Color color) {
         for (int x = 0; x < image.length; x++) {
             for (int y = 0; y < image[0].length; y++) {
@@ -511,72 +698,150 @@ public class ImageTools {
     }
 
     /** Repeats the background image until it is the height of the foreground. */
-    public static Color[][] addFramesToBackground(Color[][] background, Color[][] foreground) {
-        final int w = background.length, h = background[0].length, nh = foreground.length;
+    public static ArgbRaster addFramesToBackground(ArgbRaster background, ArgbRaster foreground) {
+        final int w = background.width, h = background.height, nh = foreground.height;
         final int frames = nh / h;
-        final Color[][] newBackground = new Color[w][h * frames];
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                for (int i = 0; i < frames; i++) {
-                    newBackground[x][(h * i) + y] = background[x][y];
-                }
-            }
+        final ArgbRaster newBackground = new ArgbRaster(w, h * frames);
+        for (int i = 0; i < frames; i++) {
+            System.arraycopy(background.pixels, 0, newBackground.pixels, w * h * i, w * h);
         }
         return newBackground;
     }
 
+    /** Variant of #addFramesToBackground which accepts color matrices. */
+    public static Color[][] addFramesToBackground(Color[][] background, Color[][] foreground) {
+        return addFramesToBackground(ArgbRaster.fromColors(background), ArgbRaster.fromColors(foreground)).toColors();
+    }
+
     /**
      * Uses getDistance() to determine the alpha level for each pixel.
      * Uses isPixelDarker() to determine whether each pixel should be
      * black or white (push or pull).
      */
-    public static Color[][] convertToPushAndPull(Color[][] background, Color[][] foreground) {
-        final Color[][] image = new Color[foreground.length][foreground[0].length];
-        for (int x = 0; x < foreground.length; x++) {
-            for (int y = 0; y < foreground[0].length; y++) {
-                int alpha = (int) (255 * getDistance(foreground[x][y], background[x][y]));
-                if (alpha > 200) {
-                    alpha = 200;
-                } else if (alpha < 0) {
-                    alpha = 0;
-                }
-                if (isPixelDarker(background[x][y], foreground[x][y])) {
-                    image[x][y] = new Color(0, 0, 0, alpha);
-                } else {
-                    image[x][y] = new Color(255, 255, 255, alpha);
-                }
+    public static ArgbRaster convertToPushAndPull(ArgbRaster background, ArgbRaster foreground) {
+        final ArgbRaster image = new ArgbRaster(foreground.width, foreground.height);
+        if (background.width == foreground.width && background.height >= foreground.height) {
+            final PixelPalette palette = getPalette(background, foreground);
+            if (palette != null) {
+                final int[] entries = new int[palette.size];
+                PixelKernels.get().pushAndPull(palette.background, palette.foreground, entries);
+                palette.expand(entries, image.pixels);
+            } else {
+                PixelKernels.get().pushAndPull(background.pixels, foreground.pixels, image.pixels);
+            }
+            return image;
+        }
+        for (int y = 0; y < foreground.height; y++) {
+            for (int x = 0; x < foreground.width; x++) {
+                image.set(x, y, getPushAndPull(background.get(x, y), foreground.get(x, y)));
             }
         }
         return image;
     }
 
+    /** Converts a single pair of pixels for #convertToPushAndPull. */
+    static int getPushAndPull(int bg, int fg) {
+        int alpha = (int) (255 * getDistance(fg, bg));
+        if (alpha > 200) {
+            alpha = 200;
+        } else if (alpha < 0) {
+            alpha = 0;
+        }
+        if (isPixelDarker(bg, fg)) {
+            return ArgbRaster.argb(alpha, 0, 0, 0);
+        }
+        return ArgbRaster.argb(alpha, 255, 255, 255);
+    }
+
+    /** Variant of #convertToPushAndPull which accepts color matrices. */
+    public static Color[][] convertToPushAndPull(Color[][] background, Color[][] foreground) {
+        return convertToPushAndPull(ArgbRaster.fromColors(background), ArgbRaster.fromColors(foreground)).toColors();
+    }
+
     /** Determines whether the foreground is lighter than the background. */
-    public static boolean isPixelDarker(Color background, Color foreground) {
-        final int fgTotal = Math.abs(foreground.getRed() + foreground.getGreen() + foreground.getBlue());
-        final int bgTotal = Math.abs(background.getRed() + background.getGreen() + background.getBlue());
+    public static boolean isPixelDarker(int background, int foreground) {
+        final int fgTotal = ArgbRaster.red(foreground) + ArgbRaster.green(foreground) + ArgbRaster.blue(foreground);
+        final int bgTotal = ArgbRaster.red(background) + ArgbRaster.green(background) + ArgbRaster.blue(background);
         return fgTotal < bgTotal;
     }
 
+    /** Variant of #isPixelDarker which accepts colors. */
+    public static boolean isPixelDarker(Color background, Color foreground) {
+        return isPixelDarker(background.getRGB(), foreground.getRGB());
+    }
+
     /** Uses a mask to fade pixels out of an image. */
+    public static ArgbRaster removePixels(ArgbRaster image, ArgbRaster mask) {
+        final byte[] alpha = new byte[image.pixels.length];
+        for (int i = 0; i < alpha.length; i++) {
+            alpha[i] = (byte) ArgbRaster.alpha(mask.pixels[i]);
+        }
+        return removePixels(image, alpha);
+    }
+
+    /** Variant of #removePixels which accepts the mask's alpha levels, one byte per pixel. */
+    public static ArgbRaster removePixels(ArgbRaster image, byte[] mask) {
+        PixelKernels.get().removePixels(image.pixels, mask);
+        return image;
+    }
+
+    /** Fades a single pixel by the alpha level of its mask for #removePixels. */
+    static int removePixel(int pixel, int maskAlpha) {
+        int a = (int) ((double) ArgbRaster.alpha(pixel) * (1.0 - ((double) maskAlpha / 255)));
+        if (a < 0) {
+            a = 0;
+        } else if (a > 255) {
+            a = 255;
+        }
+        return (a << 24) | (pixel & 0xFFFFFF);
+    }
+
+    /** Variant of #removePixels which accepts color matrices. */
     public static Color[][] removePixels(Color[][] image, Color[][] mask) {
+        final Color[][] removed = removePixels(ArgbRaster.fromColors(image), ArgbRaster.fromColors(mask)).toColors();
         for (int x = 0; x < image.length; x++) {
-            for (int y = 0; y < image[0].length; y++) {
-                final int r = image[x][y].getRed();
-                final int g = image[x][y].getGreen();
-                final int b = image[x][y].getBlue();
-                int a = (int) ((double) image[x][y].getAlpha() * (1.0 - ((double) mask[x][y].getAlpha() / 255)));
-                if (a < 0) {
-                    a = 0;
-                } else if (a > 255) {
-                    a = 255;
-                }
-                image[x][y] = new Color(r, g, b, a);
-            }
+            System.arraycopy(removed[x], 0, image[x], 0, image[0].length);
         }
         return image;
     }
 
-    /** Blends the foreground above the background. */
+    /**
+     * Blends the foreground above the background, matching pixels by their
+     * coordinates. The background may be larger than the foreground, but
+     * not smaller.
+     */
+    public static ArgbRaster overlay(ArgbRaster background, ArgbRaster foreground) {
+        if (background.width < foreground.width || background.height < foreground.height) {
+            throw new IllegalArgumentException("Expected a background of at least " + foreground.width + "x"
+                + foreground.height + ": " + background.width + "x" + background.height);
+        }
+        if (background.width != foreground.width) {
+            // The kernels index both arrays by the same flat index.
+            final ArgbRaster cropped = new ArgbRaster(foreground.width, foreground.height);
+            for (int y = 0; y < foreground.height; y++) {
+                System.arraycopy(background.pixels, y * background.width, cropped.pixels, y * foreground.width, foreground.width);
+            }
+            background = cropped;
+        }
+        final PixelPalette palette = getPalette(background, foreground);
+        if (palette != null) {
+            // The entries are a copy, so they can be blended in place before being mapped back.
+            PixelKernels.get().blend(palette.background, palette.foreground);
+            palette.expand(palette.foreground, foreground.pixels);
+        } else {
+            PixelKernels.get().blend(background.pixels, foreground.pixels);
+        }
+        return foreground;
+    }
+
+    /** The palette for a single kernel over two images, if the kernels in use would benefit from one. */
+    private static PixelPalette getPalette(ArgbRaster background, ArgbRaster foreground) {
+        return PixelKernels.get().prefersPalette()
+            ? PixelPalette.of(background.pixels, foreground.pixels, foreground.width, foreground.height)
+            : null;
+    }
+
+    /** Variant of #overlay which accepts color matrices. */
     public static Color[][] overlay(Color[][] background, Color[][] foreground) {
         for (int x = 0; x < foreground.length; x++) {
             for (int y = 0; y < foreground[0].length; y++) {
@@ -591,38 +856,36 @@ public class ImageTools {
      * alpha level. Foreground gets alpha * its color, background gets the
      * rest * its color. The final alpha is the sum of both.
      */
-    public static Color blendPixels(Color bg, Color fg) {
+    public static int blendPixels(int bg, int fg) {
+        final int fgA = ArgbRaster.alpha(fg);
         final int r, g, b;
-        if (fg.getAlpha() > OPACITY_THRESHOLD) {
-            r = fg.getRed();
-            g = fg.getGreen();
-            b = fg.getBlue();
+        if (fgA > OPACITY_THRESHOLD) {
+            r = ArgbRaster.red(fg);
+            g = ArgbRaster.green(fg);
+            b = ArgbRaster.blue(fg);
         } else {
-            r = ((fg.getRed() * fg.getAlpha()) + (bg.getRed() * (255 - fg.getAlpha()))) / 255;
-            g = ((fg.getGreen() * fg.getAlpha()) + (bg.getGreen() * (255 - fg.getAlpha()))) / 255;
-            b = ((fg.getBlue() * fg.getAlpha()) + (bg.getBlue() * (255 - fg.getAlpha()))) / 255;
+            r = ((ArgbRaster.red(fg) * fgA) + (ArgbRaster.red(bg) * (255 - fgA))) / 255;
+            g = ((ArgbRaster.green(fg) * fgA) + (ArgbRaster.green(bg) * (255 - fgA))) / 255;
+            b = ((ArgbRaster.blue(fg) * fgA) + (ArgbRaster.blue(bg) * (255 - fgA))) / 255;
         }
-        int a = fg.getAlpha() + bg.getAlpha();
+        int a = fgA + ArgbRaster.alpha(bg);
         if (a < TRANSPARENCY_THRESHOLD && r == 255 && g == 255 && b == 255) {
             return EMPTY_PIXEL; // Don't keep white pixels.
         }
         a = limitRange((int) ((double) a * TEXTURE_SHARPEN_RATIO));
 
-        return new Color(r, g, b, a);
+        return ArgbRaster.argb(a, r, g, b);
     }
 
-    private static Color fromIndex(Color[][] image, int x, int y , int frame) {
-        final int w = image.length;
-        return ((x < 0) || (y < frame * w) || (x >= w) || (y >= (frame + 1) * w) || (image[x][y].getAlpha() == 34)) ?
-            EMPTY_PIXEL : image[x][y];
+    /** Variant of #blendPixels which accepts colors. */
+    public static Color blendPixels(Color bg, Color fg) {
+        return new Color(blendPixels(bg.getRGB(), fg.getRGB()), true);
     }
 
-    /** Scales the background to the width of the foreground, repeating it for additional frames. */
-    private static Color[][] ensureSizeParity(Color[][] background, Color[][] foreground) {
-        final int w = foreground.length, h = foreground[0].length;
-        background = Main.getColors(scale(Main.getImage(background), w, h));
-        background = ImageTools.addFramesToBackground(background, foreground);
-        return background;
+    private static int fromIndex(ArgbRaster image, int x, int y , int frame) {
+        final int w = image.width;
+        return ((x < 0) || (y < frame * w) || (x >= w) || (y >= (frame + 1) * w) || (ArgbRaster.alpha(image.get(x, y)) == 34)) ?
+            EMPTY_PIXEL : image.get(x, y);
     }
 
     public static BufferedImage scale(BufferedImage image, int x, int y) {
@@ -646,19 +909,36 @@ public class ImageTools {
         return a > b ? a : b;
     }
 
-    private static class OverlayData {
-        private final Color bgAvg;
+    static class OverlayData {
+        private final int bgR, bgG, bgB;
         private final double bgDist;
         private final double maxDist;
         private final double maxRel;
-
-        public OverlayData(Color[][] bg, Color[][] fg) {
-            // Repeated calculations could be mitigated by storing
-            // bg data in a separate object. This would require
-            this.bgAvg = getAverageColor(bg);
-            this.bgDist = getAverageDistance(bg);
-            this.maxDist = getMaxDistance(bg, fg);
-            this.maxRel = getMaxRelDist(bg, fg);
+        private final int darken;
+        private final double relWeight;
+        // Per-pixel thresholds derived from the stats above.
+        private final double keepDist;
+        private final double dropDist;
+        private final double darkDist;
+        private final double threshold;
+
+        public OverlayData(ImageStats stats) {
+            this(stats, OverlayParameters.DEFAULT);
+        }
+
+        public OverlayData(ImageStats stats, OverlayParameters params) {
+            this.bgR = ArgbRaster.red(stats.bgAvgColor);
+            this.bgG = ArgbRaster.green(stats.bgAvgColor);
+            this.bgB = ArgbRaster.blue(stats.bgAvgColor);
+            this.bgDist = stats.bgDistance;
+            this.maxDist = stats.maxDistance;
+            this.maxRel = stats.maxRelDistance;
+            this.darken = params.darken;
+            this.relWeight = params.relWeight;
+            this.keepDist = params.keep * maxDist;
+            this.dropDist = params.drop * maxDist;
+            this.darkDist = params.darkScale * (maxRel + 0.001 / bgDist + 0.001);
+            this.threshold = params.getThreshold(bgDist);
         }
     }
 }
\ No newline at end of file
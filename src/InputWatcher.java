@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the input directories for changes, for Settings#WATCH. Each root
+ * is watched along with its immediate subdirectories, including ones created
+ * later, which covers /backgrounds and every /ores/<name>.
+ *
+ * Saving a sprite usually fires several events, and artists often save a few
+ * sprites at once, so #take waits for the inputs to stay quiet for a moment
+ * and returns the whole burst as a single set of files.
+ */
+public class InputWatcher implements AutoCloseable {
+    private final WatchService service;
+    private final long debounceMillis;
+    /** The directory watched by each key. */
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Set<Path> roots = ConcurrentHashMap.newKeySet();
+
+    public InputWatcher(long debounceMillis) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+    }
+
+    /** Watches a directory and each of its subdirectories. */
+    public void watch(File root) throws IOException {
+        final Path path = root.toPath().toAbsolutePath().normalize();
+        roots.add(path);
+        register(path);
+        final File[] children = root.listFiles(File::isDirectory);
+        if (children != null) {
+            for (File child : children) {
+                register(child.toPath().toAbsolutePath().normalize());
+            }
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        final WatchKey key = dir.register(service,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, dir);
+    }
+
+    /**
+     * Blocks until something changes, then waits until nothing else has
+     * changed for the debounce period. Returns every file which was created,
+     * modified or deleted, sorted. If events were lost, the directory they
+     * happened in is returned instead, and callers should treat it as if
+     * everything inside of it changed.
+     */
+    public Set<File> take() throws InterruptedException {
+        final Set<File> changed = new TreeSet<>();
+        WatchKey key = service.take();
+        while (key != null) {
+            poll(key, changed);
+            key = service.poll(debounceMillis, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private void poll(WatchKey key, Set<File> changed) {
+        final Path dir = directories.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed.add(dir.toFile());
+                continue;
+            }
+            final Path path = dir.resolve((Path) event.context());
+            changed.add(path.toFile());
+            // New subdirectories of a root, such as /ores/<name>, are watched from now on.
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && roots.contains(dir) && path.toFile().isDirectory()) {
+                try {
+                    register(path);
+                } catch (IOException e) {
+                    // It can still be regenerated as a whole, just not as individual sprites change.
+                    System.out.println("Unable to watch " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!key.reset()) {
+            // The directory is gone.
+            directories.remove(key);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
\ No newline at end of file
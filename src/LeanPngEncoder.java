@@ -0,0 +1,127 @@
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A minimal PNG writer for ARGB rasters. Every image is written as 8 bit
+ * RGBA without any ancillary chunks or row filters. Overlays are mostly
+ * transparent with flat clusters of color, where adaptive filtering costs
+ * more time than it saves in size.
+ */
+public class LeanPngEncoder implements PngEncoder {
+    private static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final byte FILTER_NONE = 0;
+
+    private final int level;
+
+    public LeanPngEncoder(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public void encode(ArgbRaster image, OutputStream os) throws IOException {
+        try (RowWriter writer = start(os, image.width, image.height, Integer.MAX_VALUE)) {
+            writer.write(image);
+        }
+    }
+
+    /**
+     * Starts writing an image whose rows are supplied a band at a time, for
+     * images too large to hold at once. The compressed data is written out
+     * as a separate IDAT chunk whenever at least chunkSize bytes of it are
+     * buffered. The image is finished once the writer is closed, which does
+     * not close the stream.
+     */
+    public RowWriter start(OutputStream os, int width, int height, int chunkSize) throws IOException {
+        return new RowWriter(os, width, height, chunkSize);
+    }
+
+    /** Writes the rows of a single image in order. See #start. */
+    public class RowWriter implements Closeable {
+        private final DataOutputStream out;
+        private final int width, height, chunkSize;
+        private final BufferOutputStream data = new BufferOutputStream();
+        private final Deflater deflater = new Deflater(level == DEFAULT_LEVEL ? Deflater.DEFAULT_COMPRESSION : level);
+        private final DeflaterOutputStream dos = new DeflaterOutputStream(data, deflater, 8192);
+        private final byte[] row;
+        private int rows;
+
+        private RowWriter(OutputStream os, int width, int height, int chunkSize) throws IOException {
+            this.out = new DataOutputStream(os);
+            this.width = width;
+            this.height = height;
+            this.chunkSize = chunkSize;
+            this.row = new byte[1 + width * BYTES_PER_PIXEL];
+            row[0] = FILTER_NONE;
+            out.write(SIGNATURE);
+
+            final BufferOutputStream header = new BufferOutputStream();
+            final DataOutputStream ihdr = new DataOutputStream(header);
+            ihdr.writeInt(width);
+            ihdr.writeInt(height);
+            ihdr.writeByte(8); // Bit depth
+            ihdr.writeByte(6); // Color type: RGBA
+            ihdr.writeByte(0); // Compression: deflate
+            ihdr.writeByte(0); // Filter method: the standard five, though only None is used
+            ihdr.writeByte(0); // No interlacing
+            writeChunk(out, "IHDR", header);
+        }
+
+        /** Writes every row of a band as the filter type followed by the RGBA bytes. */
+        public void write(ArgbRaster band) throws IOException {
+            if (band.width != width || rows + band.height > height) {
+                throw new IllegalArgumentException("Expected at most " + (height - rows) + " rows of " + width
+                    + " pixels: " + band.width + "x" + band.height);
+            }
+            for (int y = 0; y < band.height; y++) {
+                final int offset = y * width;
+                for (int x = 0, i = 1; x < width; x++, i += BYTES_PER_PIXEL) {
+                    final int argb = band.pixels[offset + x];
+                    row[i] = (byte) (argb >> 16);
+                    row[i + 1] = (byte) (argb >> 8);
+                    row[i + 2] = (byte) argb;
+                    row[i + 3] = (byte) (argb >>> 24);
+                }
+                dos.write(row);
+            }
+            rows += band.height;
+            if (data.size() >= chunkSize) {
+                writeChunk(out, "IDAT", data);
+                data.reset();
+            }
+        }
+
+        /** Writes the rest of the compressed data and the end of the image. */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (rows != height) {
+                    throw new IllegalStateException("Expected " + height + " rows: " + rows);
+                }
+                dos.finish();
+                writeChunk(out, "IDAT", data);
+                writeChunk(out, "IEND", new BufferOutputStream());
+                out.flush();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, BufferOutputStream data) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data.toByteBuffer());
+        out.writeInt(data.size());
+        out.write(typeBytes);
+        data.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+}
\ No newline at end of file
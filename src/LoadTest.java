@@ -0,0 +1,113 @@
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A load test for OverlayServer. It sends the same pair of sprites from
+ * several threads at once and reports the throughput, the latency
+ * percentiles and how the server answered each request. A tenth as many
+ * requests are sent first to warm up both sides, and they aren't measured.
+ *
+ * Usage: java LoadTest <url> <background.png> <ore.png> [requests] [concurrency] [--no-cache]
+ *
+ * With --no-cache, every request skips the server's result cache, so the
+ * results measure generating the overlays rather than serving cached ones.
+ */
+public class LoadTest {
+    public static void main(String[] args) throws Exception {
+        final boolean noCache = Arrays.asList(args).contains("--no-cache");
+        args = Arrays.stream(args).filter(a -> !a.equals("--no-cache")).toArray(String[]::new);
+        if (args.length < 3 || args.length > 5) {
+            System.out.println("Usage: java LoadTest <url> <background.png> <ore.png> [requests] [concurrency] [--no-cache]");
+            return;
+        }
+        final URI uri = URI.create(args[0]);
+        final byte[] bg = Files.readAllBytes(new File(args[1]).toPath());
+        final byte[] ore = Files.readAllBytes(new File(args[2]).toPath());
+        final int requests = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        final int concurrency = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        final byte[] body = Arrays.copyOf(bg, bg.length + ore.length);
+        System.arraycopy(ore, 0, body, bg.length, ore.length);
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if (noCache) {
+            builder.header("Cache-Control", "no-cache");
+        }
+        final HttpRequest request = builder.build();
+        final HttpClient client = HttpClient.newHttpClient();
+
+        run(client, request, Math.max(1, requests / 10), concurrency);
+        final Run run = run(client, request, requests, concurrency);
+        System.out.print(run.format());
+    }
+
+    /** Sends a number of requests from a number of threads, recording the latency of each one. */
+    private static Run run(HttpClient client, HttpRequest request, int requests, int concurrency) throws InterruptedException {
+        final Run run = new Run(requests);
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        final long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            pool.execute(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    final long sent = System.nanoTime();
+                    try {
+                        final HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        run.latencies[i] = System.nanoTime() - sent;
+                        final String status = response.statusCode() == 200
+                            ? response.headers().firstValue("X-Overlay-Cache").orElse("ok")
+                            : "HTTP " + response.statusCode();
+                        run.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                    } catch (Exception e) {
+                        run.latencies[i] = System.nanoTime() - sent;
+                        run.statuses.computeIfAbsent(e.getClass().getSimpleName(), s -> new LongAdder()).increment();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        run.nanos = System.nanoTime() - start;
+        return run;
+    }
+
+    /** The results of sending every request once. */
+    private static class Run {
+        final long[] latencies;
+        /** The number of responses by X-Overlay-Cache status, HTTP status or exception. */
+        final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        long nanos;
+
+        Run(int requests) {
+            this.latencies = new long[requests];
+        }
+
+        String format() {
+            final long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            final StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "requests:    %d in %.2f s%n", sorted.length, nanos / 1e9));
+            sb.append(String.format(Locale.ROOT, "throughput:  %.1f requests/s%n", sorted.length * 1e9 / nanos));
+            sb.append(String.format(Locale.ROOT, "latency:     p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                Metrics.percentile(sorted, 50) / 1e6, Metrics.percentile(sorted, 90) / 1e6,
+                Metrics.percentile(sorted, 99) / 1e6, Metrics.percentile(sorted, 100) / 1e6));
+            for (Map.Entry<String, LongAdder> status : new TreeMap<>(statuses).entrySet()) {
+                sb.append(String.format(Locale.ROOT, "%-13s%d%n", status.getKey() + ":", status.getValue().sum()));
+            }
+            return sb.toString();
+        }
+    }
+}
\ No newline at end of file
@@ -6,9 +6,14 @@ import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Main {
 
@@ -16,40 +21,255 @@ public class Main {
     private static final File BACKGROUNDS = new File("backgrounds");
     private static final File OUTPUT = new File("output");
 
+    /** Copied into the root of resource packs, when present. */
+    private static final String PACK_MCMETA = "pack.mcmeta";
+
     private static final String INSTRUCTIONS =
         "Place each background sprite inside of /backgrounds.\n" +
         "Then, place ore sprites in directories of the same name in /ores.";
 
-    public static void main(String[] args) {
-        final List<ImagePair> images = getAllPairs();
-        if (images.size() == 0) {
+    public static void main(String[] args) throws IOException {
+        if (Settings.SERVE > 0) {
+            serve();
+            return;
+        }
+        final Stream<ImagePair> images = streamPairs();
+        if (!Settings.OPTIMIZE.isEmpty()) {
+            optimize(images, new File(Settings.OPTIMIZE));
+            return;
+        }
+        if (Settings.WATCH && !Settings.PACK.isEmpty()) {
+            System.out.println("Watch mode only writes loose files. Remove -Doverlay.pack to use it.");
+            return;
+        }
+        generateAll(images);
+        if (Settings.WATCH) {
+            watch();
+        }
+    }
+
+    /** Generates every pair, then prints and saves the results. */
+    private static void generateAll(Stream<ImagePair> images) throws IOException {
+        final long start = System.nanoTime();
+        final ImageSink sink = createSink();
+        final BuildManifest manifest = loadManifest();
+        final StatsTable table = new StatsTable();
+        final List<PairResult> results =
+            new BatchExecutor(Settings.THREADS).run(images, pair -> process(pair, sink, manifest, table));
+        final Optional<IOException> writeError = close(sink);
+        if (manifest != null) {
+            manifest.failOutputs(sink.getFailedFiles());
+            results.stream().filter(r -> !r.isSuccess()).forEach(r -> manifest.fail(r.pair));
+            manifest.save();
+        }
+        if (results.isEmpty()) {
+            System.out.println(INSTRUCTIONS);
+            return;
+        }
+        final long nanos = System.nanoTime() - start;
+        BatchExecutor.printSummary(results, nanos);
+        writeError.ifPresent(Main::printWriteError);
+        if (!Settings.REPORT.isEmpty()) {
+            Metrics.writeReport(new File(Settings.REPORT), results, nanos);
+        }
+        if (!Settings.STATS.isEmpty()) {
+            table.write(new File(Settings.STATS));
+        }
+        if (!Settings.GROUND_TRUTH.isEmpty()) {
+            final Map<String, Map<String, Double>> truth = Correlations.readAnnotated(new File(Settings.GROUND_TRUTH));
+            System.out.print(Correlations.format(Correlations.correlate(table.getMetrics(), truth)));
+        }
+    }
+
+    /** Serves the algorithm over HTTP until the process is stopped. See OverlayServer. */
+    private static void serve() throws IOException {
+        final OverlayServer server = new OverlayServer(Settings.SERVE, Settings.SERVE_CACHE);
+        server.start();
+        System.out.println("Serving overlays on http://localhost:" + server.getPort() + "/overlay and /shaded. Press Ctrl+C to stop.");
+    }
+
+    /**
+     * Regenerates the pairs affected by each change to the inputs until the
+     * process is stopped. Everything loaded so far stays cached and the JIT
+     * stays warm, so a saved sprite is usually regenerated within milliseconds.
+     */
+    private static void watch() throws IOException {
+        try (InputWatcher watcher = new InputWatcher(Settings.WATCH_DEBOUNCE)) {
+            watcher.watch(ORES);
+            watcher.watch(BACKGROUNDS);
+            System.out.println("Watching /ores and /backgrounds for changes. Press Ctrl+C to stop.");
+            while (true) {
+                // Reports only cover the first pass.
+                Metrics.clear();
+                final Set<File> changed = watcher.take();
+                final long start = System.nanoTime();
+                final AffectedPairs affected = AffectedPairs.of(changed, ORES, BACKGROUNDS);
+                if (affected.isEmpty()) {
+                    continue;
+                }
+                final ImageSink sink = createSink();
+                final BuildManifest manifest = loadManifest();
+                final StatsTable table = new StatsTable();
+                final List<PairResult> results = new BatchExecutor(Settings.THREADS)
+                    .run(affected.pairs.stream(), pair -> process(pair, sink, manifest, table));
+                final Optional<IOException> writeError = close(sink);
+                if (manifest != null) {
+                    manifest.failOutputs(sink.getFailedFiles());
+                    results.stream().filter(r -> !r.isSuccess()).forEach(r -> manifest.fail(r.pair));
+                    manifest.keepUnaffected(affected::contains);
+                    manifest.save();
+                }
+                System.out.print(affected.format());
+                BatchExecutor.printSummary(results, System.nanoTime() - start);
+                writeError.ifPresent(Main::printWriteError);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Searches for the best overlay constants for each background instead of generating anything. */
+    private static void optimize(Stream<ImagePair> images, File references) {
+        final long start = System.nanoTime();
+        final ParameterSearch search = new ParameterSearch();
+        final List<PairResult> results = new BatchExecutor(Settings.THREADS).run(images, pair -> {
+            final File reference = new File(references, pair.getPath());
+            if (!reference.exists()) {
+                return "no reference: " + pair.getPath() + "\n";
+            }
+            search.add(pair.directory, BackgroundProfile.load(pair.background), loadRaster(pair.ore), loadRaster(reference));
+            return "reference:   " + pair.getPath() + "\n";
+        });
+        if (results.isEmpty()) {
             System.out.println(INSTRUCTIONS);
+            return;
+        }
+        BatchExecutor.printSummary(results, System.nanoTime() - start);
+        System.out.print(ParameterSearch.format(search.search()));
+    }
+
+    /** Loads the manifest of previous outputs, or returns null if every pair should be regenerated. */
+    private static BuildManifest loadManifest() throws IOException {
+        if (!Settings.INCREMENTAL || !Settings.PACK.isEmpty()) {
+            return null;
         }
-        mkdir(OUTPUT);
+        final String parameters = ImageTools.getParameters() + ",levelStep=" + Settings.LEVEL_STEP;
+        return BuildManifest.load(OUTPUT, parameters);
+    }
+
+    /** Writes loose files into /output, unless a resource pack was requested. */
+    private static ImageSink createSink() throws IOException {
+        if (Settings.PACK.isEmpty()) {
+            mkdir(OUTPUT);
+            return PngFileSink.fromSettings();
+        }
+        final ImageSink pack = ResourcePackSink.fromSettings(OUTPUT);
+        final Optional<InputStream> mcmeta = locateResource(PACK_MCMETA);
+        if (mcmeta.isPresent()) {
+            pack.write(new FileSpec(mcmeta.get(), new File(OUTPUT, PACK_MCMETA).getPath()));
+        }
+        return pack;
+    }
+
+    /** Waits for every image to be written, returning the failure instead of throwing it. */
+    private static Optional<IOException> close(ImageSink sink) {
+        try {
+            sink.close();
+            return Optional.empty();
+        } catch (IOException e) {
+            return Optional.of(e);
+        }
+    }
+
+    private static void printWriteError(IOException e) {
+        System.out.println(e.getMessage());
+        for (Throwable t : e.getSuppressed()) {
+            System.out.println("  FAILED " + t.getMessage() + ": " + t.getCause());
+        }
+    }
 
-        for (ImagePair pair : images) {
-            final Color[][] bg = getColors(pair.background);
-            final Color[][] fg = getColors(pair.ore);
-            debugImage(pair.name, bg, fg);
-            generate(pair, bg, fg);
+    /**
+     * Lazily describes every ore file matched to its background, sorted for a
+     * stable output order. The directories are validated up front, but no image
+     * is decoded until a worker picks up its pair.
+     */
+    private static Stream<ImagePair> streamPairs() {
+        final File[] dirs = listFiles(ORES);
+        Arrays.sort(dirs);
+        final List<FileArch> arches = new ArrayList<>(dirs.length);
+        for (File f : dirs) {
+            arches.add(getMatchingDirectories(f.getName()));
         }
+        return arches.stream().flatMap(arch -> {
+            final String name = arch.ores.getName();
+            return arch.streamOres().map(ore -> new ImagePair(name, ore.getName(), arch.background, ore));
+        });
     }
 
-    /** Retrieves all of the BufferedImages matched fg to bg. */
-    private static List<ImagePair> getAllPairs() {
-        final List<ImagePair> pairs = new ArrayList<>();
-        for (File f : listFiles(ORES)) {
-            final String name = f.getName();
-            final FileArch files = getMatchingDirectories(name);
-            final BufferedImage bgImage = loadImage(files.background.getPath())
-                .orElseThrow(Main::unreachable);
-            for (File ore : files.ores) {
-                final BufferedImage oreImage = loadImage(ore.getPath())
-                    .orElseThrow(Main::unreachable);
-                pairs.add(new ImagePair(ore.getName(), bgImage, oreImage));
+    /**
+     * Generates every output for a single pair, returning its debug info.
+     * With a manifest, pairs which haven't changed since the last run are
+     * skipped, although their stats are still added to the table.
+     */
+    private static String process(ImagePair pair, ImageSink sink, BuildManifest manifest, StatsTable table) throws Exception {
+        final boolean tiled = Settings.PACK.isEmpty() && TiledPipeline.shouldTile(pair);
+        // Tiled sprites are always written by the lean encoder.
+        final String png = (tiled ? "lean" : Settings.PNG_ENCODER) + ":" + Settings.PNG_LEVEL;
+        final String key = manifest != null ? manifest.getKey(pair, png) : null;
+        if (manifest != null && manifest.isUpToDate(pair, key)) {
+            manifest.keep(pair);
+            if (!Settings.STATS.isEmpty() || !Settings.GROUND_TRUTH.isEmpty()) {
+                final ImageStats stats = tiled
+                    ? TiledPipeline.getStats(pair)
+                    : getStats(BackgroundProfile.load(pair.background), loadRaster(pair.ore));
+                table.add(pair, StatsTable.getMetrics(stats));
             }
+            return "unchanged:   " + pair.getPath() + "\n";
+        }
+        if (tiled) {
+            return processTiled(pair, sink, manifest, key, table);
+        }
+        final BackgroundProfile bg;
+        final ArgbRaster fg;
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.LOAD)) {
+            bg = BackgroundProfile.load(pair.background);
+            fg = loadRaster(pair.ore);
+            t.pixels(bg.raster.pixels.length + fg.pixels.length);
         }
-        return pairs;
+        final ImageStats stats = getStats(bg, fg);
+        final Map<String, Double> metrics = StatsTable.getMetrics(stats);
+        table.add(pair, metrics);
+        final String info = debugImage(pair.name, metrics);
+        final List<File> outputs = new ArrayList<>();
+        // Shared by the overlay and every threshold level.
+        final FeaturePlanes features = getFeatures(bg, fg, stats);
+        generate(pair, bg, fg, features, sink, outputs);
+        if (Settings.LEVEL_STEP > 0) {
+            generateLeveled(pair, fg, features, Settings.LEVEL_STEP, sink, outputs);
+        }
+        if (manifest != null) {
+            manifest.record(pair, key, outputs);
+        }
+        return info;
+    }
+
+    /**
+     * Variant of #process for sprites too large to generate whole, which are
+     * written straight to /output a band of rows at a time. See TiledPipeline.
+     * Threshold levels need the whole sprite, so they are never generated.
+     */
+    private static String processTiled(ImagePair pair, ImageSink sink, BuildManifest manifest, String key, StatsTable table) throws IOException {
+        final File f = getOutputFile(pair);
+        final File shadedFile = getShadedFile(f);
+        final ImageStats stats = TiledPipeline.generate(pair, f, shadedFile);
+        final Map<String, Double> metrics = StatsTable.getMetrics(stats);
+        table.add(pair, metrics);
+        final List<File> outputs = new ArrayList<>(List.of(f, shadedFile));
+        writeMcMeta(pair, sink, outputs, f, shadedFile);
+        if (manifest != null) {
+            manifest.record(pair, key, outputs);
+        }
+        return debugImage(pair.name, metrics);
     }
 
     private static File[] listFiles(File f) {
@@ -58,7 +278,8 @@ public class Main {
     }
 
     private static void mkdir(File f) {
-        if (!(f.exists() || f.mkdirs())) {
+        // Checked after mkdirs() in case another thread created it first.
+        if (!(f.mkdirs() || f.isDirectory())) {
             throw new RuntimeException("Error creating directory: " + f);
         }
     }
@@ -77,13 +298,36 @@ public class Main {
     public static Optional<BufferedImage> loadImage(String path) {
         Optional<InputStream> is = locateResource(path);
         if (is.isPresent()) {
-            try {
-                return Optional.of(ImageIO.read(is.get()));
+            try (InputStream stream = is.get()) {
+                return Optional.ofNullable(ImageIO.read(stream));
             } catch (IOException ignored) {}
         }
         return Optional.empty();
     }
 
+    /** Calculates the stats for a pair or a single frame, as the STATS stage. */
+    static ImageStats getStats(BackgroundProfile bg, ArgbRaster fg) {
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.STATS)) {
+            t.pixels(fg.pixels.length);
+            return ImageStats.of(bg, fg);
+        }
+    }
+
+    /** Calculates the features of a pair or a single frame, as the FEATURES stage. */
+    static FeaturePlanes getFeatures(BackgroundProfile bg, ArgbRaster fg, ImageStats stats) {
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.FEATURES)) {
+            t.pixels(bg.raster.pixels.length);
+            return FeaturePlanes.of(bg, fg, stats);
+        }
+    }
+
+    /** Loads an image file into a raster, failing if it cannot be decoded. */
+    private static ArgbRaster loadRaster(File f) throws IOException {
+        return SpriteCache.load(f, () -> loadImage(f.getPath())
+            .map(ArgbRaster::fromImage)
+            .orElseThrow(() -> new RuntimeException("Error reading image: " + f)));
+    }
+
     /** Retrieves a resource in or outside of the jar file. */
     private static Optional<InputStream> locateResource(String path) {
         final InputStream relative = Main.class.getResourceAsStream(path);
@@ -97,64 +341,62 @@ public class Main {
         }
     }
 
-    private static RuntimeException unreachable() {
-        return new RuntimeException("unreachable");
-    }
-
     /** Reuses any original .mcmeta files for all overlay variants. */
-    private static void handleMcMeta(Set<FileSpec> files, String forImage, String... paths) {
-        locateResource(forImage + ".mcmeta").ifPresent(mcmeta -> {
-            for (String path : paths) {
-                files.add(new FileSpec(mcmeta, path + ".mcmeta"));
-            }
-        });
+    private static void handleMcMeta(Set<FileSpec> files, String forImage, String... paths) throws IOException {
+        final Optional<InputStream> mcmeta = locateResource(forImage + ".mcmeta");
+        if (!mcmeta.isPresent()) {
+            return;
+        }
+        // Read once, since every copy needs its own stream.
+        final byte[] bytes;
+        try (InputStream is = mcmeta.get()) {
+            bytes = is.readAllBytes();
+        }
+        for (String path : paths) {
+            files.add(new FileSpec(new ByteArrayInputStream(bytes), path + ".mcmeta"));
+        }
     }
 
     /** Generates a matrix of colors from the input BufferedImage. */
     public static Color[][] getColors(BufferedImage image) {
-        final int w = image.getWidth(), h = image.getHeight();
-        final Color[][] colors = new Color[w][h];
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                colors[x][y] = new Color(image.getRGB(x, y), true);
-            }
-        }
-        return colors;
+        return ArgbRaster.fromImage(image).toColors();
     }
 
     /** Generates a BufferedImage from the input color matrix. */
     public static BufferedImage getImage(Color[][] image) {
-        final int w = image.length, h = image[0].length;
-        final BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                bi.setRGB(x, y, image[x][y].getRGB());
-            }
-        }
-        return bi;
+        return ArgbRaster.fromColors(image).toImage();
     }
 
-    /** Generates a faux InputStream from the input color matrix. */
-    private static InputStream getStream(Color[][] image) {
+    /** Generates a faux InputStream from the input raster. */
+    private static InputStream getStream(ArgbRaster image) {
         BufferOutputStream os = new BufferOutputStream();
         try {
-            ImageIO.write(getImage(image), "png", os);
+            ImageIO.write(image.toImage(), "png", os);
         } catch (IOException e) {
-            throw new RuntimeException("Unable to generate faux InputStream from color matrix", e);
+            throw new RuntimeException("Unable to generate faux InputStream from raster", e);
         }
         return os.toInputStream();
     }
 
+    /** Variant of #getStream which accepts a color matrix. */
+    private static InputStream getStream(Color[][] image) {
+        return getStream(ArgbRaster.fromColors(image));
+    }
+
     /** Writes a new image to the disk. */
-    private static void writeImage(Color[][] image, String path) {
-        try {
-            final OutputStream os = new FileOutputStream(path);
-            ImageIO.write(getImage(image), "png", os);
+    private static void writeImage(ArgbRaster image, String path) {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(path))) {
+            ImageIO.write(image.toImage(), "png", os);
         } catch (IOException e) {
             throw new RuntimeException("Error writing image: " + path, e);
         }
     }
 
+    /** Variant of #writeImage which accepts a color matrix. */
+    private static void writeImage(Color[][] image, String path) {
+        writeImage(ArgbRaster.fromColors(image), path);
+    }
+
     /** Returns a clone of the input color matrix. */
     private static Color[][] cloneColors(Color[][] colors) {
         final int w = colors.length, h = colors[0].length;
@@ -167,65 +409,101 @@ public class Main {
         return newColors;
     }
 
-    private static void debugImage(String path, Color[][] bg, Color[][] fg) {
-        final double diffAB = ImageTools.getAverageDistance(bg, fg);
-        final double diffA = ImageTools.getAverageDistance(fg);
-        final double diffB = ImageTools.getAverageDistance(bg);
-        final double diffD = Math.abs(diffAB - diffA);
-        final double diffE = Math.abs(diffAB - diffB);
-        final double diffU = Math.abs(diffA - diffB);
-        final double diffW = diffAB / diffU;
-        final double sumU = diffA + diffB;
-        final double diffS = Math.abs(diffAB - sumU);
-        final double thrsA = 2.3 * diffAB;
-        final double multD = thrsA / diffD;
-        final double multU = thrsA / diffU;
-        final double multS = thrsA / diffS;
-        final double avgDst = ImageTools.getAverageDistance(bg, fg);
-        final double maxDst = ImageTools.getMaxDistance(bg, fg);
-        final double ratDst = maxDst / avgDst;
-        final double avgDstBg = ImageTools.getAverageDistance(bg);
-        final double maxDist = ImageTools.getMaxDistance(bg, fg);
-        final double maxRel = ImageTools.getMaxRelDist(bg, fg);
-
-        System.out.println("name:        " + path);
-        System.out.println("diff(fg/bg): " + diffAB);
-        System.out.println("diff(fg):    " + diffA);
-        System.out.println("diff(bg):    " + diffB);
-        System.out.println("diffD:       " + diffD);
-        System.out.println("diffE:       " + diffE);
-        System.out.println("diffU:       " + diffU);
-        System.out.println("diffS:       " + diffS);
-        System.out.println("diffW:       " + diffW);
-        System.out.println("multD:       " + multD);
-        System.out.println("multU:       " + multU);
-        System.out.println("multS:       " + multS);
-        System.out.println("avgDst:      " + avgDst);
-        System.out.println("maxDst:      " + maxDst);
-        System.out.println("ratDst:      " + ratDst);
-        System.out.println("avgDstBg:    " + avgDstBg);
-        System.out.println("max rel:     " + maxRel);
-        System.out.println("max std:     " + maxDist);
-        System.out.println();
-    }
-
-    private static void generateLeveled(ImagePair pair, Color[][] bg, Color[][] fg) {
-        for (double d = 0.0; d < 3.0; d += 0.05) {
-            final String name = pair.name.replace(".png", "");
-            final File dir = new File(OUTPUT, name);
-            mkdir(dir);
-
-            final File f = new File(dir, d + ".png");
-            final Color[][] overlay = ImageTools.getOverlayManual(bg, fg, d);
-            writeImage(overlay, f.getPath());
-        }
-    }
-
-    private static void generate(ImagePair pair, Color[][] bg, Color[][] fg) {
-        final File f = new File(OUTPUT, pair.name);
-        final Color[][] overlay = ImageTools.getOverlay(bg, fg);
-        writeImage(overlay, f.getPath());
-        final Color[][] shaded = ImageTools.shadeOverlay(overlay, bg, fg);
-        writeImage(shaded, f.getPath().replace(".png", "_shaded.png"));
+    private static String debugImage(String path, Map<String, Double> metrics) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("name:        ").append(path).append('\n');
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            sb.append(String.format("%-13s", metric.getKey() + ":")).append(metric.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** Generates #getOverlayManual at every threshold level for a single pair. */
+    private static void generateLeveled(ImagePair pair, ArgbRaster fg, FeaturePlanes features, double step, ImageSink sink, List<File> outputs) throws Exception {
+        final String name = pair.name.replace(".png", "");
+        final File dir = new File(new File(OUTPUT, pair.directory), name);
+
+        final int count = (int) Math.ceil(3.0 / step);
+        final double[] levels = new double[count];
+        int i = 0;
+        for (double d = 0.0; d < 3.0 && i < count; d += step) {
+            levels[i++] = d;
+        }
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.SWEEP)) {
+            t.pixels(fg.pixels.length);
+            final ThresholdSweep sweep = new ThresholdSweep(features);
+            sweep.sweep(Arrays.copyOf(levels, i), (d, overlay) -> {
+                // The sweep reuses its raster for the next level.
+                final File f = new File(dir, d + ".png");
+                sink.write(overlay.copy(), f);
+                outputs.add(f);
+            });
+        }
+    }
+
+    /**
+     * Generates the overlay and shaded overlay of a sprite, given the features
+     * of its first frame. Each distinct frame of an animation goes through the
+     * whole pipeline on its own.
+     */
+    static Overlays getOverlays(BackgroundProfile bg, ArgbRaster fg, FeaturePlanes features) {
+        final SpriteFrames frames = SpriteFrames.of(fg);
+        final List<Overlays> results = frames.map(frame -> {
+            final FeaturePlanes frameFeatures =
+                frames.count == 1 ? features : getFeatures(bg, frame, getStats(bg, frame));
+            final ArgbRaster overlay;
+            try (Metrics.Timer t = Metrics.start(Metrics.Stage.OVERLAY)) {
+                t.pixels(frame.pixels.length);
+                overlay = ImageTools.getOverlay(frameFeatures, OverlayParameters.DEFAULT);
+            }
+            // Shading happens in place, but the overlay is still needed.
+            try (Metrics.Timer t = Metrics.start(Metrics.Stage.SHADE)) {
+                t.pixels(frame.pixels.length);
+                return new Overlays(overlay, ImageTools.shadeOverlay(overlay.copy(), bg, frame));
+            }
+        });
+        return new Overlays(
+            frames.stack(results.stream().map(r -> r.overlay).collect(Collectors.toList())),
+            frames.stack(results.stream().map(r -> r.shaded).collect(Collectors.toList()))
+        );
+    }
+
+    private static void generate(ImagePair pair, BackgroundProfile bg, ArgbRaster fg, FeaturePlanes features, ImageSink sink, List<File> outputs) throws IOException {
+        final File f = getOutputFile(pair);
+        final File shadedFile = getShadedFile(f);
+        final Overlays overlays = getOverlays(bg, fg, features);
+        sink.write(overlays.overlay, f);
+        sink.write(overlays.shaded, shadedFile);
+        outputs.add(f);
+        outputs.add(shadedFile);
+        writeMcMeta(pair, sink, outputs, f, shadedFile);
+    }
+
+    private static File getOutputFile(ImagePair pair) {
+        return new File(new File(OUTPUT, pair.directory), pair.name);
+    }
+
+    private static File getShadedFile(File overlay) {
+        return new File(overlay.getPath().replace(".png", "_shaded.png"));
+    }
+
+    /** Copies the ore's .mcmeta file, if it has one, for each of its outputs. */
+    private static void writeMcMeta(ImagePair pair, ImageSink sink, List<File> outputs, File... images) throws IOException {
+        final Set<FileSpec> mcmeta = new HashSet<>();
+        handleMcMeta(mcmeta, pair.ore.getPath(), Arrays.stream(images).map(File::getPath).toArray(String[]::new));
+        for (FileSpec spec : mcmeta) {
+            sink.write(spec);
+            outputs.add(new File(spec.path));
+        }
+    }
+
+    /** The images generated for an ore sprite, or for a single frame of one. */
+    static class Overlays {
+        final ArgbRaster overlay, shaded;
+
+        Overlays(ArgbRaster overlay, ArgbRaster shaded) {
+            this.overlay = overlay;
+            this.shaded = shaded;
+        }
     }
 }
\ No newline at end of file
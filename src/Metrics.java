@@ -0,0 +1,281 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Measures each stage of the pipeline. Every measurement is committed as an
+ * "overlay.Stage" JFR event whenever a recording is running, and is kept for
+ * the run report written by #writeReport.
+ */
+public class Metrics {
+    /** The stages of processing a single pair, in order. */
+    public enum Stage {
+        /** Reading and decoding both sprites, or mapping them from the sprite cache. */
+        LOAD,
+        /** Calculating the ImageStats behind OverlayData. */
+        STATS,
+        /** Calculating the FeaturePlanes shared by every overlay variant. */
+        FEATURES,
+        OVERLAY,
+        SHADE,
+        /** Generating every threshold level. See Settings#LEVEL_STEP. */
+        SWEEP,
+        ENCODE,
+        /** Storing encoded images, either as files or in a resource pack. */
+        WRITE
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean TRACK_ALLOCATIONS = isAllocationTrackingSupported();
+    private static final Map<Stage, Queue<Sample>> SAMPLES = new EnumMap<>(Stage.class);
+
+    static {
+        for (Stage stage : Stage.values()) {
+            SAMPLES.put(stage, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    private Metrics() {}
+
+    /** Starts measuring a stage on the current thread. Close the timer when the stage is done. */
+    public static Timer start(Stage stage) {
+        return new Timer(stage);
+    }
+
+    /** Discards every sample so far, so that a long-running watch doesn't accumulate them. */
+    public static void clear() {
+        for (Queue<Sample> samples : SAMPLES.values()) {
+            samples.clear();
+        }
+    }
+
+    private static boolean isAllocationTrackingSupported() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+    }
+
+    /** The bytes allocated by the current thread so far, or 0 if the JVM can't tell. */
+    private static long allocatedBytes() {
+        return TRACK_ALLOCATIONS ? ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /** A single stage in progress. */
+    public static class Timer implements AutoCloseable {
+        private final Stage stage;
+        private final StageEvent event = new StageEvent();
+        private final long start, startAllocated;
+        private long pixels, bytes;
+
+        private Timer(Stage stage) {
+            this.stage = stage;
+            this.startAllocated = allocatedBytes();
+            this.start = System.nanoTime();
+            event.begin();
+        }
+
+        /** Adds to the number of pixels processed by this stage. */
+        public Timer pixels(long pixels) {
+            this.pixels += pixels;
+            return this;
+        }
+
+        /** Adds to the number of bytes written by this stage. */
+        public Timer bytes(long bytes) {
+            this.bytes += bytes;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            final long nanos = System.nanoTime() - start;
+            final long allocated = allocatedBytes() - startAllocated;
+            SAMPLES.get(stage).add(new Sample(nanos, pixels, bytes, allocated));
+            if (event.shouldCommit()) {
+                event.stage = stage.name().toLowerCase(Locale.ROOT);
+                event.pixels = pixels;
+                event.bytes = bytes;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    /** One measurement of a stage. */
+    private static class Sample {
+        final long nanos, pixels, bytes, allocated;
+
+        Sample(long nanos, long pixels, long bytes, long allocated) {
+            this.nanos = nanos;
+            this.pixels = pixels;
+            this.bytes = bytes;
+            this.allocated = allocated;
+        }
+    }
+
+    @Name("overlay.Stage")
+    @Label("Overlay Stage")
+    @Category("Overlay")
+    @Description("A single stage of generating the outputs for one pair")
+    public static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Pixels")
+        long pixels;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    /**
+     * Writes a summary of every stage and of the pairs as a whole, with
+     * percentiles over every measurement. Files ending in .csv are written as
+     * one row per stage, and anything else is written as JSON.
+     */
+    public static void writeReport(File file, List<PairResult> results, long nanos) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory: " + parent);
+        }
+        final long[] pairNanos = results.stream().mapToLong(r -> r.nanos).toArray();
+        final long failed = results.stream().filter(r -> !r.isSuccess()).count();
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            if (file.getName().endsWith(".csv")) {
+                writeCsv(out, pairNanos);
+            } else {
+                writeJson(out, pairNanos, failed, nanos);
+            }
+        }
+    }
+
+    private static void writeCsv(PrintWriter out, long[] pairNanos) {
+        out.println("stage,count,total_ms,p50_ms,p90_ms,p99_ms,max_ms,pixels,pixels_per_sec,bytes,allocated_bytes");
+        out.println(String.join(",", "pair", String.valueOf(pairNanos.length), durations(pairNanos, ","), "", "", "", ""));
+        for (Stage stage : Stage.values()) {
+            final Totals t = new Totals(SAMPLES.get(stage));
+            out.println(String.join(",",
+                stage.name().toLowerCase(Locale.ROOT),
+                String.valueOf(t.count),
+                durations(t.nanos, ","),
+                String.valueOf(t.pixels),
+                format(t.pixelsPerSecond()),
+                String.valueOf(t.bytes),
+                String.valueOf(t.allocated)
+            ));
+        }
+    }
+
+    private static void writeJson(PrintWriter out, long[] pairNanos, long failed, long nanos) {
+        out.println("{");
+        out.println("  \"wallMs\": " + format(nanos / 1e6) + ",");
+        out.println("  \"pairs\": {\"count\": " + pairNanos.length + ", \"failed\": " + failed + ", "
+            + durations(pairNanos, null) + "},");
+        out.println("  \"stages\": {");
+        final Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            final Totals t = new Totals(SAMPLES.get(stages[i]));
+            out.print("    \"" + stages[i].name().toLowerCase(Locale.ROOT) + "\": {"
+                + "\"count\": " + t.count + ", "
+                + durations(t.nanos, null) + ", "
+                + "\"pixels\": " + t.pixels + ", "
+                + "\"pixelsPerSec\": " + format(t.pixelsPerSecond()) + ", "
+                + "\"bytes\": " + t.bytes + ", "
+                + "\"allocatedBytes\": " + t.allocated + "}");
+            out.println(i < stages.length - 1 ? "," : "");
+        }
+        out.println("  }");
+        out.println("}");
+    }
+
+    /**
+     * Formats the total, 50th, 90th and 99th percentiles and max in ms,
+     * either as CSV columns or as JSON fields when there is no separator.
+     */
+    private static String durations(long[] nanos, String separator) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        final double[] values = {
+            Arrays.stream(sorted).sum() / 1e6,
+            percentile(sorted, 50) / 1e6,
+            percentile(sorted, 90) / 1e6,
+            percentile(sorted, 99) / 1e6,
+            sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6
+        };
+        final String[] names = {"totalMs", "p50Ms", "p90Ms", "p99Ms", "maxMs"};
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(separator != null ? separator : ", ");
+            }
+            if (separator == null) {
+                sb.append('"').append(names[i]).append("\": ");
+            }
+            sb.append(format(values[i]));
+        }
+        return sb.toString();
+    }
+
+    /** The nearest-rank percentile of a sorted array. */
+    static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /** The sums of every sample for a single stage. */
+    private static class Totals {
+        final int count;
+        final long[] nanos;
+        long pixels, bytes, allocated, totalNanos;
+
+        Totals(Queue<Sample> samples) {
+            final Sample[] all = samples.toArray(new Sample[0]);
+            this.count = all.length;
+            this.nanos = new long[all.length];
+            for (int i = 0; i < all.length; i++) {
+                nanos[i] = all[i].nanos;
+                totalNanos += all[i].nanos;
+                pixels += all[i].pixels;
+                bytes += all[i].bytes;
+                allocated += all[i].allocated;
+            }
+        }
+
+        /** Pixels per second of time spent in this stage, summed over every thread. */
+        double pixelsPerSecond() {
+            return totalNanos == 0 ? 0 : pixels * 1e9 / totalNanos;
+        }
+    }
+}
\ No newline at end of file
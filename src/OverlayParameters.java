@@ -0,0 +1,56 @@
+import java.util.Locale;
+
+/**
+ * The constants behind ImageTools#getOrePixel. The defaults are the values
+ * picked by hand with generateLeveled, and ParameterSearch finds better ones
+ * for a background by comparing against reference overlays.
+ */
+public class OverlayParameters {
+    public static final OverlayParameters DEFAULT = new OverlayParameters(0.7, 0.1, 45, 0.125, 1.2, 0.2, 0.05, 10.0);
+
+    /** Pixels further than this fraction of the max distance from the background are always kept. */
+    public final double keep;
+    /** Pixels closer than this fraction of the max distance to the background are always removed. */
+    public final double drop;
+    /** How much the background is darkened to detect shadows, per channel. */
+    public final int darken;
+    /** Scales the max relative distance into the cutoff for shadows. */
+    public final double darkScale;
+    /** The final threshold for backgrounds which are busier or flatter than #busyCutoff. */
+    public final double busyThreshold, flatThreshold;
+    /** The average neighbor distance above which a background counts as busy. */
+    public final double busyCutoff;
+    /** The weight of the relative distance in the final score. */
+    public final double relWeight;
+
+    public OverlayParameters(
+        double keep, double drop, int darken, double darkScale,
+        double busyThreshold, double flatThreshold, double busyCutoff, double relWeight
+    ) {
+        this.keep = keep;
+        this.drop = drop;
+        this.darken = darken;
+        this.darkScale = darkScale;
+        this.busyThreshold = busyThreshold;
+        this.flatThreshold = flatThreshold;
+        this.busyCutoff = busyCutoff;
+        this.relWeight = relWeight;
+    }
+
+    /** Variant of the constructor with a single threshold for every background. */
+    public OverlayParameters(double keep, double drop, int darken, double darkScale, double threshold, double relWeight) {
+        this(keep, drop, darken, darkScale, threshold, threshold, DEFAULT.busyCutoff, relWeight);
+    }
+
+    /** The final threshold for a background with the given average neighbor distance. */
+    public double getThreshold(double bgDist) {
+        return bgDist > busyCutoff ? busyThreshold : flatThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "keep=%s,drop=%s,darken=%d,darkScale=%s,busyThreshold=%s,flatThreshold=%s,busyCutoff=%s,relWeight=%s",
+            keep, drop, darken, darkScale, busyThreshold, flatThreshold, busyCutoff, relWeight);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,355 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Serves the overlay algorithm over HTTP on the loopback address, so that
+ * other tools can call it without starting a JVM for every sprite. See
+ * Settings#SERVE.
+ *
+ * Each request is a POST whose body is the background PNG followed directly
+ * by the ore PNG. /overlay responds with the overlay and /shaded with the
+ * shaded overlay, both as PNGs, generated the same way as by Main:
+ *
+ *     cat stone.png ore.png | curl --data-binary @- localhost:8080/overlay > overlay.png
+ *
+ * Both images are generated together and cached by a digest of the request
+ * body, up to a total size. Identical requests which arrive while one is
+ * still being generated wait for its result instead of repeating the work.
+ * "Cache-Control: no-cache" skips the cache, but requests are still
+ * coalesced. The X-Overlay-Cache header says whether each response was a
+ * "hit", "coalesced" with another request, or a "miss".
+ */
+public class OverlayServer {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    /** Requests larger than this are rejected. */
+    private static final int MAX_REQUEST = 16 << 20;
+    /** Images with more pixels than this are rejected, since a small PNG can decode to gigabytes. */
+    private static final long MAX_PIXELS = 1 << 24;
+    /** The number of distinct backgrounds whose profiles are kept in memory. */
+    private static final int PROFILES = 16;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final PngEncoder encoder = PngEncoder.of(Settings.PNG_ENCODER, Settings.PNG_LEVEL);
+    private final ResultCache cache;
+    /** Requests being generated, by key. */
+    private final Map<String, CompletableFuture<Result>> pending = new ConcurrentHashMap<>();
+    /** Background profiles by digest, with the least recently used evicted first. */
+    private final Map<String, BackgroundProfile> profiles = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BackgroundProfile> eldest) {
+            return size() > PROFILES;
+        }
+    };
+
+    /** Creates a server on a local port, or any free port if 0, with a cache of up to the given size. */
+    public OverlayServer(int port, long cacheBytes) throws IOException {
+        // Otherwise, small responses wait on delayed ACKs for up to 40 ms. Read when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newExecutor();
+        this.cache = new ResultCache(cacheBytes);
+        server.setExecutor(executor);
+        server.createContext("/overlay", exchange -> handle(exchange, r -> r.overlay));
+        server.createContext("/shaded", exchange -> handle(exchange, r -> r.shaded));
+    }
+
+    /**
+     * Handles every request on its own virtual thread when the JVM supports
+     * them, or else on a cached pool of platform threads. Either way,
+     * concurrent requests never queue behind each other, which lets identical
+     * ones be coalesced. The build targets Java 17, so virtual threads are
+     * only found reflectively.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /** Stops accepting requests and lets any in progress finish. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /** The port the server is listening on. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, Function<Result, byte[]> image) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, "Expected a POST of the background PNG followed by the ore PNG.");
+                return;
+            }
+            final byte[] body;
+            try (InputStream is = exchange.getRequestBody()) {
+                body = is.readNBytes(MAX_REQUEST + 1);
+            }
+            if (body.length > MAX_REQUEST) {
+                send(exchange, 413, "Requests are limited to " + MAX_REQUEST + " bytes.");
+                return;
+            }
+            final boolean useCache = !"no-cache".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Cache-Control"));
+            final Lookup lookup;
+            try {
+                lookup = lookup(body, useCache);
+            } catch (ImageTooLargeException e) {
+                send(exchange, 413, e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                send(exchange, 500, e.toString());
+                return;
+            }
+            final byte[] png = image.apply(lookup.result);
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.getResponseHeaders().set("ETag", '"' + lookup.result.key + '"');
+            exchange.getResponseHeaders().set("X-Overlay-Cache", lookup.status);
+            exchange.sendResponseHeaders(200, png.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(png);
+            }
+        } finally {
+            exchange.close();
+            // Only batch runs report metrics, so a long-running server shouldn't keep them.
+            Metrics.clear();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        final byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /** Finds the result for a request body in the cache, from an identical request, or by generating it. */
+    private Lookup lookup(byte[] body, boolean useCache) {
+        final String key = Hashes.sha256(body);
+        if (useCache) {
+            final Result cached = cache.get(key);
+            if (cached != null) {
+                return new Lookup(cached, "hit");
+            }
+        }
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        final CompletableFuture<Result> existing = pending.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return new Lookup(existing.join(), "coalesced");
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            // Another request may have finished between the first lookup and now.
+            final Result cached = useCache ? cache.get(key) : null;
+            final Result result = cached != null ? cached : generate(key, body);
+            cache.put(result);
+            future.complete(result);
+            return new Lookup(result, cached != null ? "hit" : "miss");
+        } catch (Throwable t) {
+            // Otherwise, identical requests would wait forever after an Error such as running out of memory.
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            pending.remove(key);
+        }
+    }
+
+    private Result generate(String key, byte[] body) {
+        final int split = getPngLength(body, 0);
+        if (split == body.length) {
+            throw new IllegalArgumentException("Expected the ore PNG after the background PNG.");
+        }
+        if (split + getPngLength(body, split) != body.length) {
+            throw new IllegalArgumentException("Expected exactly two PNGs: the background followed by the ore.");
+        }
+        final BackgroundProfile bg = getProfile(body, split);
+        final ArgbRaster fg = decode(body, split, body.length - split);
+        if (fg.width != bg.raster.width || fg.height % bg.raster.height != 0) {
+            throw new IllegalArgumentException("Expected an ore of " + bg.raster.width + "x" + bg.raster.height
+                + " or a strip of frames that size: " + fg.width + "x" + fg.height);
+        }
+        final Main.Overlays overlays = Main.getOverlays(bg, fg, Main.getFeatures(bg, fg, Main.getStats(bg, fg)));
+        return new Result(key, encode(overlays.overlay), encode(overlays.shaded));
+    }
+
+    /** Reuses the profile of a background which was sent before. */
+    private BackgroundProfile getProfile(byte[] body, int length) {
+        final MessageDigest digest = Hashes.newDigest();
+        digest.update(body, 0, length);
+        final String hash = Hashes.toHex(digest.digest());
+        synchronized (profiles) {
+            final BackgroundProfile cached = profiles.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final BackgroundProfile profile = BackgroundProfile.of(decode(body, 0, length));
+        synchronized (profiles) {
+            profiles.put(hash, profile);
+        }
+        return profile;
+    }
+
+    private static ArgbRaster decode(byte[] bytes, int offset, int length) {
+        try {
+            final BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes, offset, length));
+            if (image == null) {
+                throw new IllegalArgumentException("Unable to decode the PNG at byte " + offset);
+            }
+            return ArgbRaster.fromImage(image);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode the PNG at byte " + offset, e);
+        }
+    }
+
+    private byte[] encode(ArgbRaster image) {
+        final BufferOutputStream png = new BufferOutputStream();
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.ENCODE).pixels(image.pixels.length)) {
+            encoder.encode(image, png);
+            t.bytes(png.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Error encoding image", e);
+        }
+        return png.toByteArray();
+    }
+
+    /**
+     * The length of the PNG file starting at an offset, found by walking its
+     * chunks up to the IEND chunk. Throws ImageTooLargeException as soon as
+     * the IHDR chunk gives a size of more than MAX_PIXELS.
+     */
+    private static int getPngLength(byte[] bytes, int offset) {
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (offset + i >= bytes.length || bytes[offset + i] != PNG_SIGNATURE[i]) {
+                throw new IllegalArgumentException("Expected a PNG at byte " + offset);
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = offset + PNG_SIGNATURE.length;
+        // Each chunk is its length, type, data and CRC.
+        while (position + 12 <= bytes.length) {
+            final int p = (int) position;
+            final long length = buffer.getInt(p) & 0xFFFFFFFFL;
+            final boolean header = bytes[p + 4] == 'I' && bytes[p + 5] == 'H' && bytes[p + 6] == 'D' && bytes[p + 7] == 'R';
+            if (header && length >= 8 && p + 16 <= bytes.length) {
+                final long width = buffer.getInt(p + 8) & 0xFFFFFFFFL, height = buffer.getInt(p + 12) & 0xFFFFFFFFL;
+                if (width * height > MAX_PIXELS) {
+                    throw new ImageTooLargeException("Images are limited to " + MAX_PIXELS + " pixels: "
+                        + width + "x" + height + " at byte " + offset);
+                }
+            }
+            final boolean end = bytes[p + 4] == 'I' && bytes[p + 5] == 'E' && bytes[p + 6] == 'N' && bytes[p + 7] == 'D';
+            position += 12 + length;
+            if (end && position <= bytes.length) {
+                return (int) (position - offset);
+            }
+        }
+        throw new IllegalArgumentException("Truncated PNG at byte " + offset);
+    }
+
+    /** Thrown for a PNG with too many pixels to decode, which is answered with a 413. */
+    private static class ImageTooLargeException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        ImageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /** Both images generated for a request, encoded. */
+    private static class Result {
+        final String key;
+        final byte[] overlay, shaded;
+
+        Result(String key, byte[] overlay, byte[] shaded) {
+            this.key = key;
+            this.overlay = overlay;
+            this.shaded = shaded;
+        }
+
+        long size() {
+            return overlay.length + shaded.length;
+        }
+    }
+
+    /** A result and how it was found, for the X-Overlay-Cache header. */
+    private static class Lookup {
+        final Result result;
+        final String status;
+
+        Lookup(Result result, String status) {
+            this.result = result;
+            this.status = status;
+        }
+    }
+
+    /** Results by key, evicting the least recently used once their total size exceeds the capacity. */
+    private static class ResultCache {
+        private final long capacity;
+        private final LinkedHashMap<String, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        ResultCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized Result get(String key) {
+            return results.get(key);
+        }
+
+        synchronized void put(Result result) {
+            if (result.size() > capacity) {
+                return;
+            }
+            final Result old = results.put(result.key, result);
+            size += result.size() - (old != null ? old.size() : 0);
+            final Iterator<Result> eldest = results.values().iterator();
+            while (size > capacity) {
+                size -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+/** A DTO describing the outcome of processing a single ImagePair. */
+public class PairResult {
+    public final ImagePair pair;
+    public final String report;
+    public final Throwable error;
+    public final long nanos;
+
+    private PairResult(ImagePair pair, String report, Throwable error, long nanos) {
+        this.pair = pair;
+        this.report = report;
+        this.error = error;
+        this.nanos = nanos;
+    }
+
+    public static PairResult success(ImagePair pair, String report, long nanos) {
+        return new PairResult(pair, report, null, nanos);
+    }
+
+    public static PairResult failure(ImagePair pair, Throwable error, long nanos) {
+        return new PairResult(pair, null, error, nanos);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Searches for the OverlayParameters which best reproduce a set of reference
+ * overlays, such as outputs which were corrected by hand. Every ore directory
+ * shares a single background, so each one is a class with its own constants.
+ *
+ * Candidates are scored by the number of pixels where ImageTools#getOverlay
+ * would agree with the references. The FeaturePlanes of every sample are
+ * calculated once up front, so that scoring a candidate only costs a few
+ * comparisons per pixel, or per distinct pair of colors in low-color sprites.
+ * The best candidate on a coarse grid is then refined with a pattern search,
+ * evaluating each set of candidates in parallel.
+ */
+public class ParameterSearch {
+    /** The searched dimensions, in the order of every candidate array. */
+    private static final Dimension[] DIMENSIONS = {
+        new Dimension(0.3, 0.9, 7),   // keep
+        new Dimension(0.0, 0.3, 7),   // drop
+        new Dimension(0, 90, 7),      // darken
+        new Dimension(0.0, 0.3, 7),   // darkScale
+        new Dimension(0.0, 3.0, 16),  // threshold
+        new Dimension(0.0, 20.0, 9)   // relWeight
+    };
+    private static final int KEEP = 0, DROP = 1, DARKEN = 2, DARK_SCALE = 3, THRESHOLD = 4, REL_WEIGHT = 5;
+    /** The number of times the pattern search halves its step before it stops. */
+    private static final int REFINEMENTS = 8;
+
+    /** The samples for each background class. */
+    private final Map<String, List<Sample>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an ore sprite and its reference overlay to a background class.
+     * Animations are added one frame at a time, each with its own stats,
+     * the same way that Main generates them. This may be called from any thread.
+     */
+    public void add(String background, BackgroundProfile bg, ArgbRaster fg, ArgbRaster reference) {
+        final SpriteFrames frames = SpriteFrames.of(fg);
+        final int w = bg.raster.width, h = bg.raster.height;
+        if (reference.width != w || reference.height != h * frames.count) {
+            throw new IllegalArgumentException("Expected a " + w + "x" + h * frames.count + " reference: "
+                + reference.width + "x" + reference.height);
+        }
+        final List<Sample> samples =
+            classes.computeIfAbsent(background, k -> Collections.synchronizedList(new ArrayList<>()));
+        for (int i = 0; i < frames.count; i++) {
+            final ArgbRaster frame = frames.get(i);
+            samples.add(new Sample(FeaturePlanes.of(bg, frame), reference, i * w * h));
+        }
+    }
+
+    /** Searches every background class, returning the results by name. */
+    public Map<String, Result> search() {
+        final Map<String, Result> results = new LinkedHashMap<>();
+        for (String name : new TreeSet<>(classes.keySet())) {
+            results.put(name, search(new Features(classes.get(name))));
+        }
+        return results;
+    }
+
+    private static Result search(Features f) {
+        final double[] defaults = f.getDefaults();
+        final int defaultScore = f.score(defaults);
+
+        // First, score every point on the grid.
+        int gridSize = 1;
+        for (Dimension d : DIMENSIONS) {
+            gridSize *= d.points;
+        }
+        final int[] scores = IntStream.range(0, gridSize).parallel().map(i -> f.score(getGridPoint(i))).toArray();
+        int bestIndex = 0;
+        for (int i = 1; i < gridSize; i++) {
+            if (scores[i] > scores[bestIndex] || (scores[i] == scores[bestIndex]
+                    && getDistance(getGridPoint(i), defaults) < getDistance(getGridPoint(bestIndex), defaults))) {
+                bestIndex = i;
+            }
+        }
+        final int gridScore = scores[bestIndex];
+
+        // Then, starting from the defaults if the grid did no better, move to
+        // the best neighbor for as long as there is one, halving the step
+        // whenever there isn't.
+        double[] best = defaultScore >= gridScore ? defaults : getGridPoint(bestIndex);
+        int bestScore = Math.max(defaultScore, gridScore);
+        final double[] steps = new double[DIMENSIONS.length];
+        for (int d = 0; d < steps.length; d++) {
+            steps[d] = DIMENSIONS[d].getStep() / 2;
+        }
+        long refined = 0;
+        for (int halvings = 0; halvings < REFINEMENTS; ) {
+            final List<double[]> neighbors = getNeighbors(best, steps);
+            final int[] neighborScores = neighbors.parallelStream().mapToInt(f::score).toArray();
+            refined += neighbors.size();
+            int next = -1;
+            for (int i = 0; i < neighborScores.length; i++) {
+                if (neighborScores[i] > (next < 0 ? bestScore : neighborScores[next])) {
+                    next = i;
+                }
+            }
+            if (next >= 0) {
+                best = neighbors.get(next);
+                bestScore = neighborScores[next];
+            } else {
+                for (int d = 0; d < steps.length; d++) {
+                    steps[d] /= 2;
+                }
+                halvings++;
+            }
+        }
+        return new Result(toParameters(best), f.size, f.samples.length, defaultScore, gridScore, bestScore, gridSize, refined);
+    }
+
+    /** Decodes a grid index into a candidate, with the last dimension varying fastest. */
+    private static double[] getGridPoint(int index) {
+        final double[] candidate = new double[DIMENSIONS.length];
+        for (int d = DIMENSIONS.length - 1; d >= 0; d--) {
+            final Dimension dimension = DIMENSIONS[d];
+            candidate[d] = dimension.getValue(index % dimension.points);
+            index /= dimension.points;
+        }
+        return candidate;
+    }
+
+    /** Every candidate within one step of the center in any number of dimensions. */
+    private static List<double[]> getNeighbors(double[] center, double[] steps) {
+        final List<double[]> neighbors = new ArrayList<>();
+        int count = 1;
+        for (int d = 0; d < DIMENSIONS.length; d++) {
+            count *= 3;
+        }
+        for (int i = 0; i < count; i++) {
+            final double[] candidate = new double[DIMENSIONS.length];
+            boolean moved = false;
+            for (int d = 0, offsets = i; d < DIMENSIONS.length; d++, offsets /= 3) {
+                final int offset = offsets % 3 - 1;
+                final double step = d == DARKEN ? Math.max(1, Math.round(steps[d])) : steps[d];
+                candidate[d] = round(Math.max(0, center[d] + offset * step));
+                if (d == DARKEN) {
+                    candidate[d] = Math.min(255, candidate[d]);
+                }
+                moved |= candidate[d] != center[d];
+            }
+            if (moved) {
+                neighbors.add(candidate);
+            }
+        }
+        return neighbors;
+    }
+
+    /** The distance between two candidates, with each dimension scaled by the size of its grid. */
+    private static double getDistance(double[] a, double[] b) {
+        double distance = 0;
+        for (int d = 0; d < DIMENSIONS.length; d++) {
+            distance += Math.abs(a[d] - b[d]) / (DIMENSIONS[d].max - DIMENSIONS[d].min);
+        }
+        return distance;
+    }
+
+    private static OverlayParameters toParameters(double[] c) {
+        return new OverlayParameters(c[KEEP], c[DROP], (int) c[DARKEN], c[DARK_SCALE], c[THRESHOLD], c[REL_WEIGHT]);
+    }
+
+    /** Rounds away the error accumulated by adding steps, which would otherwise clutter the output. */
+    private static double round(double value) {
+        return Math.round(value * 1e6) / 1e6;
+    }
+
+    /** Formats the results as a summary of each class, followed by its best constants. */
+    public static String format(Map<String, Result> results) {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            final Result r = entry.getValue();
+            sb.append(String.format(Locale.ROOT, "%s: %d pixels in %d frames%n", entry.getKey(), r.pixels, r.frames));
+            sb.append(String.format(Locale.ROOT, "  default:   %6.2f%%%n", r.getAccuracy(r.defaultScore)));
+            sb.append(String.format(Locale.ROOT, "  grid:      %6.2f%% (%d candidates)%n", r.getAccuracy(r.gridScore), r.gridCandidates));
+            sb.append(String.format(Locale.ROOT, "  refined:   %6.2f%% (%d candidates)%n", r.getAccuracy(r.score), r.refinedCandidates));
+            sb.append("  ").append(r.parameters).append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    /** The best constants for a single background class, and how they compare to the defaults. */
+    public static class Result {
+        public final OverlayParameters parameters;
+        public final int pixels, frames;
+        /** The number of pixels matching the references with the defaults, the grid, and after refinement. */
+        public final int defaultScore, gridScore, score;
+        public final long gridCandidates, refinedCandidates;
+
+        Result(
+            OverlayParameters parameters, int pixels, int frames,
+            int defaultScore, int gridScore, int score, long gridCandidates, long refinedCandidates
+        ) {
+            this.parameters = parameters;
+            this.pixels = pixels;
+            this.frames = frames;
+            this.defaultScore = defaultScore;
+            this.gridScore = gridScore;
+            this.score = score;
+            this.gridCandidates = gridCandidates;
+            this.refinedCandidates = refinedCandidates;
+        }
+
+        /** The percentage of pixels matching the references for a score. */
+        public double getAccuracy(int score) {
+            return pixels == 0 ? 0 : 100.0 * score / pixels;
+        }
+    }
+
+    /** A range of values to search for one of the parameters. */
+    private static class Dimension {
+        final double min, max;
+        final int points;
+
+        Dimension(double min, double max, int points) {
+            this.min = min;
+            this.max = max;
+            this.points = points;
+        }
+
+        double getStep() {
+            return (max - min) / (points - 1);
+        }
+
+        double getValue(int point) {
+            return round(min + point * getStep());
+        }
+    }
+
+    /** The features of a single frame of an ore sprite, along with its reference. */
+    private static class Sample {
+        final FeaturePlanes features;
+        /**
+         * The number of pixels in each entry of the features which match the
+         * reference when the entry is kept, and when it is removed.
+         */
+        final int[] keepMatches, dropMatches;
+        final int pixels;
+
+        Sample(FeaturePlanes features, ArgbRaster reference, int offset) {
+            this.features = features;
+            this.keepMatches = new int[features.size];
+            this.dropMatches = new int[features.size];
+            this.pixels = features.width * features.height;
+            for (int i = 0; i < pixels; i++) {
+                final int expected = reference.pixels[offset + i];
+                final int entry = features.entryOf(i);
+                if (expected == features.foreground[i]) {
+                    keepMatches[entry]++;
+                }
+                if (expected == 0) {
+                    dropMatches[entry]++;
+                }
+            }
+        }
+    }
+
+    /** Every sample in a background class. */
+    private static class Features {
+        final Sample[] samples;
+        final int size;
+        final double bgDist;
+
+        Features(List<Sample> list) {
+            this.samples = list.toArray(new Sample[0]);
+            int size = 0;
+            for (Sample sample : samples) {
+                size += sample.pixels;
+            }
+            this.size = size;
+            this.bgDist = samples[0].features.stats.bgDistance;
+        }
+
+        /** The defaults as a candidate, using the threshold they would pick for this background. */
+        double[] getDefaults() {
+            final OverlayParameters d = OverlayParameters.DEFAULT;
+            return new double[] {d.keep, d.drop, d.darken, d.darkScale, d.getThreshold(bgDist), d.relWeight};
+        }
+
+        /** The number of pixels where a candidate agrees with the references. */
+        int score(double[] candidate) {
+            final OverlayParameters params = toParameters(candidate);
+            int correct = 0;
+            for (Sample sample : samples) {
+                final FeaturePlanes f = sample.features;
+                final ImageTools.OverlayData data = new ImageTools.OverlayData(f.stats, params);
+                final double[] stdDist = f.stdDist, dist = f.dist, relDist = f.relDist;
+                final double[] darkDist = f.getDarkDistances(params.darken);
+                final int[] keepMatches = sample.keepMatches, dropMatches = sample.dropMatches;
+                for (int i = 0; i < keepMatches.length; i++) {
+                    final boolean kept = ImageTools.isOrePixel(stdDist[i], darkDist[i], dist[i], relDist[i], data);
+                    correct += kept ? keepMatches[i] : dropMatches[i];
+                }
+            }
+            return correct;
+        }
+    }
+}
\ No newline at end of file
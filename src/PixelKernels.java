@@ -0,0 +1,82 @@
+/**
+ * The per-pixel loops behind shading and the distance maps. Unless noted, each
+ * array holds packed ARGB pixels in the same layout as ArgbRaster. Every input must be
+ * at least as long as the output. Implementations must produce bit-identical
+ * results, so that switching backends never changes an image.
+ */
+public interface PixelKernels {
+    /** Writes ImageTools#getDistance for each pair of pixels. */
+    void distances(int[] background, int[] foreground, double[] out);
+
+    /** Writes ImageTools#getRelativeDistance for each pair of pixels. */
+    void relativeDistances(int[] background, int[] foreground, double[] out);
+
+    /** Writes the push and pull texture for each pair of pixels. See ImageTools#convertToPushAndPull. */
+    void pushAndPull(int[] background, int[] foreground, int[] out);
+
+    /** Fades each pixel by the unsigned alpha level in its mask, in place. See ImageTools#removePixels. */
+    void removePixels(int[] image, byte[] mask);
+
+    /** Blends each foreground pixel above its background, in place. See ImageTools#blendPixels. */
+    void blend(int[] background, int[] foreground);
+
+    /**
+     * Whether a PixelPalette saves time even before a single kernel, such as
+     * in #pushAndPull and #blend. Its lookups cost about as much as vectorized
+     * math, so only backends working one pixel at a time should say so.
+     */
+    default boolean prefersPalette() {
+        return false;
+    }
+
+    /** The name of this backend, as accepted by #select. */
+    String name();
+
+    /** The kernels currently in use. */
+    static PixelKernels get() {
+        return Backend.current;
+    }
+
+    /**
+     * Switches to the named backend: "scalar", "vector", or "auto" to pick
+     * the vector backend whenever it can be loaded. Returns the backend that
+     * was actually selected.
+     */
+    static PixelKernels select(String name) {
+        return Backend.current = Backend.load(name);
+    }
+
+    final class Backend {
+        private static volatile PixelKernels current = load(Settings.KERNELS);
+
+        private Backend() {}
+
+        private static PixelKernels load(String name) {
+            switch (name) {
+                case "scalar":
+                    return ScalarKernels.INSTANCE;
+                case "vector":
+                    final PixelKernels vector = loadVector();
+                    if (vector == null) {
+                        System.err.println("The vector kernels require --add-modules jdk.incubator.vector. Using scalar.");
+                        return ScalarKernels.INSTANCE;
+                    }
+                    return vector;
+                case "auto":
+                    final PixelKernels auto = loadVector();
+                    return auto != null ? auto : ScalarKernels.INSTANCE;
+                default:
+                    throw new IllegalArgumentException("Unknown kernels: " + name);
+            }
+        }
+
+        /** Loads the vector backend reflectively so that this class never links against the incubator module. */
+        private static PixelKernels loadVector() {
+            try {
+                return (PixelKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+                return null;
+            }
+        }
+    }
+}
\ No newline at end of file
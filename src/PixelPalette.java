@@ -0,0 +1,216 @@
+import java.util.Arrays;
+
+/**
+ * The distinct pairs of background and foreground pixels in an image, each
+ * stored once as an entry. Vanilla-style sprites only use a handful of colors,
+ * even when upscaled, so a per-pixel function can be evaluated once for each
+ * entry and copied back to every pixel with #expand.
+ */
+public class PixelPalette {
+    /** Palettes with more than one entry for every this many pixels aren't worth building. */
+    private static final int MIN_PIXELS_PER_ENTRY = 4;
+    /** Images with fewer pixels are cheap enough to scan without sampling them first. */
+    private static final int MIN_SAMPLED_PIXELS = 1 << 16;
+    /** The entries allocated up front, which grow as needed. */
+    private static final int INITIAL_ENTRIES = 256;
+
+    /** The number of entries. */
+    public final int size;
+    /** The background and foreground pixel of each entry. */
+    public final int[] background, foreground;
+    private final int width;
+    /** The entry of each pixel. */
+    private final int[] index;
+    /** Whether each row is the same as the one above it. */
+    private final boolean[] repeated;
+
+    private PixelPalette(int width, int size, int[] background, int[] foreground, int[] index, boolean[] repeated) {
+        this.width = width;
+        this.size = size;
+        this.background = background;
+        this.foreground = foreground;
+        this.index = index;
+        this.repeated = repeated;
+    }
+
+    /**
+     * Collects the distinct pairs in two images of the same width, covering
+     * the first rows of each. Returns null if palettes are disabled (see
+     * Settings#PALETTE) or if there are too many distinct pairs for a palette
+     * to save any work, in which case the scan stops as soon as that is known.
+     */
+    public static PixelPalette of(int[] background, int[] foreground, int width, int height) {
+        final int length = width * height;
+        final int limit = length / MIN_PIXELS_PER_ENTRY;
+        if (!Settings.PALETTE || limit == 0 || !isSampleSparse(background, foreground, length)) {
+            return null;
+        }
+        final LongIntMap entries = new LongIntMap(Math.min(limit, INITIAL_ENTRIES));
+        int[] bg = new int[Math.min(limit, INITIAL_ENTRIES)], fg = new int[bg.length];
+        final int[] index = new int[length];
+        final boolean[] repeated = new boolean[height];
+        int size = 0;
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+            // Upscaled textures repeat whole rows, which are much cheaper to compare than to look up.
+            if (y > 0 && Arrays.equals(background, row - width, row, background, row, row + width)
+                && Arrays.equals(foreground, row - width, row, foreground, row, row + width)) {
+                System.arraycopy(index, row - width, index, row, width);
+                repeated[y] = true;
+                continue;
+            }
+            long previous = 0;
+            for (int i = row; i < row + width; i++) {
+                final long key = key(background[i], foreground[i]);
+                // Neighboring pixels usually share a pair, which skips the lookup.
+                if (i > row && key == previous) {
+                    index[i] = index[i - 1];
+                    continue;
+                }
+                int entry = entries.putIfAbsent(key, size);
+                if (entry < 0) {
+                    if (size == limit) {
+                        return null;
+                    }
+                    if (size == bg.length) {
+                        bg = Arrays.copyOf(bg, Math.min(limit, size * 2));
+                        fg = Arrays.copyOf(fg, bg.length);
+                    }
+                    bg[size] = background[i];
+                    fg[size] = foreground[i];
+                    entry = size++;
+                }
+                index[i] = entry;
+                previous = key;
+            }
+        }
+        return new PixelPalette(width, size, Arrays.copyOf(bg, size), Arrays.copyOf(fg, size), index, repeated);
+    }
+
+    /**
+     * Whether a sample of pixels at an even spacing suggests few enough
+     * distinct pairs for a palette to be worth building, which rules out
+     * noisy sprites before anything the size of the image is allocated.
+     *
+     * Among n samples of an image with d distinct pairs, about n^2 / 2d are
+     * repeats of an earlier sample. Taking 4 * sqrt(length) samples, a
+     * palette at its limit has about 32 of them and pure noise about 8.
+     */
+    private static boolean isSampleSparse(int[] background, int[] foreground, int length) {
+        if (length < MIN_SAMPLED_PIXELS) {
+            return true;
+        }
+        // An odd step moves along the row on each pass, rather than sampling a single column.
+        final int step = (int) (length / (4 * Math.sqrt(length))) | 1;
+        final LongIntMap sampled = new LongIntMap(INITIAL_ENTRIES);
+        int samples = 0, distinct = 0;
+        for (int i = 0; i < length; i += step) {
+            if (sampled.putIfAbsent(key(background[i], foreground[i]), distinct) < 0) {
+                distinct++;
+            }
+            samples++;
+        }
+        final long limit = length / MIN_PIXELS_PER_ENTRY;
+        return (long) (samples - distinct) * 2 * limit >= (long) samples * samples;
+    }
+
+    /** Packs a pair into a single key. */
+    private static long key(int background, int foreground) {
+        return ((long) background << 32) | (foreground & 0xFFFFFFFFL);
+    }
+
+    /** The entry of a single pixel. */
+    public int entryOf(int pixel) {
+        return index[pixel];
+    }
+
+    /** Copies the value for each entry to every pixel using it. */
+    public void expand(int[] values, int[] out) {
+        for (int y = 0; y < repeated.length; y++) {
+            final int row = y * width;
+            if (repeated[y]) {
+                System.arraycopy(out, row - width, out, row, width);
+            } else {
+                for (int i = row; i < row + width; i++) {
+                    out[i] = values[index[i]];
+                }
+            }
+        }
+    }
+
+    /** Variant of #expand which returns a new array of doubles. */
+    public double[] expand(double[] values) {
+        final double[] out = new double[index.length];
+        for (int y = 0; y < repeated.length; y++) {
+            final int row = y * width;
+            if (repeated[y]) {
+                System.arraycopy(out, row - width, out, row, width);
+            } else {
+                for (int i = row; i < row + width; i++) {
+                    out[i] = values[index[i]];
+                }
+            }
+        }
+        return out;
+    }
+
+    /** An open-addressing map from each pair, packed into a long, to its entry. */
+    private static class LongIntMap {
+        private long[] keys;
+        /** The value for each slot plus one, or 0 where the slot is empty. */
+        private int[] values;
+        private int mask;
+        private int count;
+
+        /** Creates a map which stays at most half full with up to the given number of keys, growing beyond that. */
+        LongIntMap(int expected) {
+            final int capacity = Integer.highestOneBit(Math.max(1, expected) * 2 - 1) << 1;
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /** Returns the value for the key, or adds the value and returns -1 if the key is new. */
+        int putIfAbsent(long key, int value) {
+            int slot = hash(key) & mask;
+            while (values[slot] != 0) {
+                if (keys[slot] == key) {
+                    return values[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value + 1;
+            if (++count * 2 > keys.length) {
+                grow();
+            }
+            return -1;
+        }
+
+        /** Doubles the capacity, placing every key again. */
+        private void grow() {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (values[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        /** Mixes every bit of the key into the low bits, which pick the slot. */
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+            return (int) (h ^ (h >>> 16));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Compresses a raster into the bytes of a PNG file. */
+public interface PngEncoder {
+    /** The deflate level used when none is configured. */
+    int DEFAULT_LEVEL = -1;
+
+    void encode(ArgbRaster image, OutputStream os) throws IOException;
+
+    /**
+     * Gets an encoder by name: "imageio" for the standard ImageIO writer, or
+     * "lean" for a minimal writer specialized for ARGB rasters. The level is
+     * from 0 (fastest) to 9 (smallest), or #DEFAULT_LEVEL.
+     */
+    static PngEncoder of(String name, int level) {
+        if (level < DEFAULT_LEVEL || level > 9) {
+            throw new IllegalArgumentException("Deflate level must be from 0 to 9: " + level);
+        }
+        switch (name) {
+            case "imageio":
+                return new ImageIoPngEncoder(level);
+            case "lean":
+                return new LeanPngEncoder(level);
+            default:
+                throw new IllegalArgumentException("Unknown PNG encoder: " + name);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/** Writes every image as a loose PNG file, creating directories as needed. */
+public class PngFileSink extends EncodingSink {
+
+    public PngFileSink(PngEncoder encoder, int threads, int capacity) {
+        super(encoder, threads, capacity);
+    }
+
+    /** Creates a sink using the PNG options in Settings. */
+    public static PngFileSink fromSettings() {
+        return new PngFileSink(encoderFromSettings(), Settings.PNG_THREADS, Settings.PNG_QUEUE);
+    }
+
+    /**
+     * Writes the PNG beside the old file and then moves it into place, so
+     * that a failed write never leaves a partial image behind.
+     */
+    @Override
+    protected void store(File file, BufferOutputStream png) throws IOException {
+        final Path path = file.toPath().toAbsolutePath();
+        createParent(path);
+        final Path temp = Files.createTempFile(path.getParent(), file.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = png.toByteBuffer();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void write(FileSpec spec) throws IOException {
+        final Path path = new File(spec.path).toPath();
+        createParent(path);
+        try (InputStream is = spec.is) {
+            Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void createParent(Path path) throws IOException {
+        final Path parent = path.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,235 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the rows of a PNG file in order without ever holding the whole
+ * image, for SpriteCache#open. ImageIO can only decode a band of rows by
+ * inflating every row above it, which makes reading a large image one band
+ * at a time quadratic.
+ *
+ * Only non-interlaced 8 bit RGB and RGBA images are supported, which covers
+ * nearly every large texture. For these, the pixels are exactly the same as
+ * ImageIO and ArgbRaster#fromImage would give. #open returns null for any
+ * other kind of image.
+ */
+public class PngRowReader implements Closeable {
+    private static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+    private static final int IHDR = 0x49484452, IDAT = 0x49444154, tRNS = 0x74524E53;
+    private static final int COLOR_RGB = 2, COLOR_RGBA = 6;
+
+    public final int width, height;
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final InputStream data;
+    private final int bytesPerPixel;
+    /** The current and previous row, after filtering is undone. */
+    private byte[] row, previous;
+    /** The number of rows read so far. */
+    private int rows;
+
+    private PngRowReader(DataInputStream in, int width, int height, int bytesPerPixel, int firstChunk) {
+        this.in = in;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.data = new InflaterInputStream(new ImageData(firstChunk), inflater, 8192);
+        this.row = new byte[width * bytesPerPixel];
+        this.previous = new byte[width * bytesPerPixel];
+    }
+
+    /** Opens a PNG file, or returns null if it isn't one that this can read. */
+    public static PngRowReader open(File f) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+        try {
+            final PngRowReader reader = open(in);
+            if (reader == null) {
+                in.close();
+            }
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /** Reads every chunk up to the image data. */
+    private static PngRowReader open(DataInputStream in) throws IOException {
+        final byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE) || in.readInt() != 13 || in.readInt() != IHDR) {
+            return null;
+        }
+        final int width = in.readInt(), height = in.readInt();
+        final int bitDepth = in.readUnsignedByte(), colorType = in.readUnsignedByte();
+        final int compression = in.readUnsignedByte(), filter = in.readUnsignedByte(), interlace = in.readUnsignedByte();
+        in.readInt(); // CRC
+        if (bitDepth != 8 || (colorType != COLOR_RGB && colorType != COLOR_RGBA)
+                || compression != 0 || filter != 0 || interlace != 0
+                || width <= 0 || height <= 0 || (long) width * 4 > Integer.MAX_VALUE - 1) {
+            return null;
+        }
+        while (true) {
+            final int length = in.readInt(), type = in.readInt();
+            if (type == IDAT) {
+                return new PngRowReader(in, width, height, colorType == COLOR_RGBA ? 4 : 3, length);
+            }
+            // ImageIO makes a transparent color of RGB images with one, which isn't worth supporting here.
+            if (type == tRNS) {
+                return null;
+            }
+            skip(in, (length & 0xFFFFFFFFL) + 4);
+        }
+    }
+
+    /** Reads the next rows into the start of an array, one ARGB pixel per int. */
+    public void read(int[] out, int count) throws IOException {
+        if (rows + count > height) {
+            throw new IllegalArgumentException("Expected at most " + (height - rows) + " more rows: " + count);
+        }
+        for (int y = 0; y < count; y++) {
+            final int filter = data.read();
+            if (filter < 0) {
+                throw new EOFException("Truncated PNG image data");
+            }
+            final byte[] swap = previous;
+            previous = row;
+            row = swap;
+            readFully(row);
+            unfilter(filter, row, previous, bytesPerPixel);
+            final int offset = y * width;
+            if (bytesPerPixel == 4) {
+                for (int x = 0, i = 0; x < width; x++, i += 4) {
+                    out[offset + x] = ArgbRaster.argb(row[i + 3] & 0xFF, row[i] & 0xFF, row[i + 1] & 0xFF, row[i + 2] & 0xFF);
+                }
+            } else {
+                for (int x = 0, i = 0; x < width; x++, i += 3) {
+                    out[offset + x] = ArgbRaster.argb(255, row[i] & 0xFF, row[i + 1] & 0xFF, row[i + 2] & 0xFF);
+                }
+            }
+            rows++;
+        }
+    }
+
+    private void readFully(byte[] bytes) throws IOException {
+        for (int n = 0; n < bytes.length; ) {
+            final int read = data.read(bytes, n, bytes.length - n);
+            if (read < 0) {
+                throw new EOFException("Truncated PNG image data");
+            }
+            n += read;
+        }
+    }
+
+    /** Undoes one of the standard filters for a row, in place. */
+    private static void unfilter(int filter, byte[] row, byte[] previous, int bpp) throws IOException {
+        switch (filter) {
+            case 0: // None
+                break;
+            case 1: // Sub
+                for (int i = bpp; i < row.length; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 0; i < row.length; i++) {
+                    row[i] += previous[i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 0; i < row.length; i++) {
+                    final int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (left + (previous[i] & 0xFF)) >> 1;
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 0; i < row.length; i++) {
+                    final int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    final int b = previous[i] & 0xFF;
+                    final int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    final int p = a + b - c;
+                    final int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    row[i] += pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type: " + filter);
+        }
+    }
+
+    private static void skip(DataInputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            final long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                throw new EOFException("Truncated PNG chunk");
+            }
+            bytes -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * The compressed image data, which may be split across any number of
+     * consecutive IDAT chunks. CRCs aren't checked, the same as ImageIO.
+     */
+    private class ImageData extends InputStream {
+        /** The bytes left in the current chunk, or -1 after the last one. */
+        private long remaining;
+
+        ImageData(int firstChunk) {
+            this.remaining = firstChunk & 0xFFFFFFFFL;
+        }
+
+        /** Moves on to the next chunk once the current one is used up, returning false at the end. */
+        private boolean advance() throws IOException {
+            while (remaining == 0) {
+                in.readInt(); // CRC
+                final int length = in.readInt(), type = in.readInt();
+                if (type != IDAT) {
+                    remaining = -1;
+                    return false;
+                }
+                remaining = length & 0xFFFFFFFFL;
+            }
+            return remaining > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!advance()) {
+                return -1;
+            }
+            remaining--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            final int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0) {
+                throw new EOFException("Truncated PNG chunk");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+}
\ No newline at end of file
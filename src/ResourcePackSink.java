@@ -0,0 +1,75 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams every image straight into a single zip (or jar) as soon as it is
+ * encoded, so that a resource pack can be built without any loose files.
+ * Entries are named by their path relative to the output directory. PNGs
+ * are already compressed, so they are stored without deflating them again.
+ */
+public class ResourcePackSink extends EncodingSink {
+    private final ZipOutputStream zip;
+    private final Path root;
+
+    public ResourcePackSink(File pack, File root, PngEncoder encoder, int threads, int capacity) throws IOException {
+        super(encoder, threads, capacity);
+        final Path parent = pack.toPath().toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(pack.toPath())));
+        this.root = root.toPath();
+    }
+
+    /** Creates a sink writing to Settings#PACK, using the PNG options in Settings. */
+    public static ResourcePackSink fromSettings(File root) throws IOException {
+        return new ResourcePackSink(new File(Settings.PACK), root, encoderFromSettings(), Settings.PNG_THREADS, Settings.PNG_QUEUE);
+    }
+
+    @Override
+    protected void store(File file, BufferOutputStream png) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(png.toByteBuffer());
+        final ZipEntry entry = new ZipEntry(getEntryName(file));
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(png.size());
+        entry.setCompressedSize(png.size());
+        entry.setCrc(crc.getValue());
+        synchronized (zip) {
+            zip.putNextEntry(entry);
+            png.writeTo(zip);
+            zip.closeEntry();
+        }
+    }
+
+    @Override
+    public void write(FileSpec spec) throws IOException {
+        final byte[] bytes;
+        try (InputStream is = spec.is) {
+            bytes = is.readAllBytes();
+        }
+        synchronized (zip) {
+            zip.putNextEntry(new ZipEntry(getEntryName(new File(spec.path))));
+            zip.write(bytes);
+            zip.closeEntry();
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        synchronized (zip) {
+            zip.close();
+        }
+    }
+
+    private String getEntryName(File file) {
+        return root.relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+}
\ No newline at end of file
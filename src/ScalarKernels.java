@@ -0,0 +1,51 @@
+/** The default PixelKernels, which visit one pixel at a time. */
+public class ScalarKernels implements PixelKernels {
+    public static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() {}
+
+    @Override
+    public void distances(int[] background, int[] foreground, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = ImageTools.getDistance(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public void relativeDistances(int[] background, int[] foreground, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = ImageTools.getRelativeDistance(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public void pushAndPull(int[] background, int[] foreground, int[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = ImageTools.getPushAndPull(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public void removePixels(int[] image, byte[] mask) {
+        for (int i = 0; i < image.length; i++) {
+            image[i] = ImageTools.removePixel(image[i], mask[i] & 0xFF);
+        }
+    }
+
+    @Override
+    public void blend(int[] background, int[] foreground) {
+        for (int i = 0; i < foreground.length; i++) {
+            foreground[i] = ImageTools.blendPixels(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public boolean prefersPalette() {
+        return true;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
\ No newline at end of file
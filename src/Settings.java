@@ -0,0 +1,98 @@
+/**
+ * Tuning options for a run. Each one is read from a system property so that
+ * it can be changed without recompiling, e.g. -Doverlay.threads=8.
+ */
+public class Settings {
+    /** The number of image pairs to process concurrently. */
+    public static final int THREADS =
+        Integer.getInteger("overlay.threads", Runtime.getRuntime().availableProcessors());
+    /**
+     * When positive, every pair also generates #getOverlayManual at each
+     * threshold from 0 to 3 in steps of this size, for calibration.
+     */
+    public static final double LEVEL_STEP =
+        Double.parseDouble(System.getProperty("overlay.levelStep", "0"));
+    /**
+     * Which PixelKernels to use: "scalar", "vector" or "auto". The vector
+     * kernels need --add-modules jdk.incubator.vector, and auto only uses
+     * them when that module is present.
+     */
+    public static final String KERNELS = System.getProperty("overlay.kernels", "auto");
+    /**
+     * Which PngEncoder to write images with: "imageio" or "lean". Sprites
+     * generated by TiledPipeline are always written with "lean".
+     */
+    public static final String PNG_ENCODER = System.getProperty("overlay.png.encoder", "imageio");
+    /** The deflate level for PNG files, from 0 (fastest) to 9 (smallest), or -1 for the encoder's default. */
+    public static final int PNG_LEVEL = Integer.getInteger("overlay.png.level", PngEncoder.DEFAULT_LEVEL);
+    /** The number of threads encoding PNG files. When 0, images are encoded by the workers themselves. */
+    public static final int PNG_THREADS =
+        Integer.getInteger("overlay.png.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    /** The number of images which may wait to be encoded before the workers are stalled. */
+    public static final int PNG_QUEUE = Integer.getInteger("overlay.png.queue", 32);
+    /**
+     * When set, every output is written into this zip (or jar) instead of
+     * as loose files in /output, e.g. -Doverlay.pack=overlays.zip.
+     */
+    public static final String PACK = System.getProperty("overlay.pack", "");
+    /**
+     * The directory holding decoded copies of every input sprite, so that
+     * reruns can skip PNG decoding. Set it to an empty string to disable it.
+     */
+    public static final String SPRITE_CACHE = System.getProperty("overlay.spriteCache", ".sprite-cache");
+    /**
+     * Whether to skip pairs whose inputs and parameters haven't changed since
+     * the last run. This never applies to resource packs, which are always
+     * written from scratch.
+     */
+    public static final boolean INCREMENTAL =
+        Boolean.parseBoolean(System.getProperty("overlay.incremental", "true"));
+    /**
+     * When set, a report of the time spent in each stage is written to this
+     * file at the end of a run, as CSV if it ends in .csv or JSON otherwise.
+     */
+    public static final String REPORT = System.getProperty("overlay.report", "");
+    /** When set, the stats printed for every pair are also written to this CSV file. */
+    public static final String STATS = System.getProperty("overlay.stats", "");
+    /**
+     * When set, the stats for every pair are correlated with the ideal
+     * thresholds in this file, such as "Ore Data-annotated.txt".
+     */
+    public static final String GROUND_TRUTH = System.getProperty("overlay.groundTruth", "");
+    /**
+     * When set, no outputs are generated. Instead, the overlay constants are
+     * tuned against the reference overlays in this directory, which follow
+     * the layout of /output. See ParameterSearch.
+     */
+    public static final String OPTIMIZE = System.getProperty("overlay.optimize", "");
+    /**
+     * Whether the per-pixel math is only done once for each distinct pair of
+     * background and foreground colors, when there are few enough of them.
+     * See PixelPalette.
+     */
+    public static final boolean PALETTE = Boolean.parseBoolean(System.getProperty("overlay.palette", "true"));
+    /**
+     * Whether to keep running after the first pass, regenerating the pairs
+     * affected by every change to /ores or /backgrounds. Resource packs can't
+     * be watched, only loose files.
+     */
+    public static final boolean WATCH = Boolean.parseBoolean(System.getProperty("overlay.watch", "false"));
+    /** How long the inputs must stay quiet, in milliseconds, before a burst of changes is regenerated. */
+    public static final long WATCH_DEBOUNCE = Long.getLong("overlay.watch.debounce", 50);
+    /**
+     * When positive, nothing is generated from /ores. Instead, the overlay
+     * algorithm is served over HTTP on this local port. See OverlayServer.
+     */
+    public static final int SERVE = Integer.getInteger("overlay.serve", 0);
+    /** The total size in bytes of the generated PNGs which the server keeps cached. */
+    public static final long SERVE_CACHE = Long.getLong("overlay.serve.cache", 64L << 20);
+    /**
+     * Sprites with at least this many pixels are generated a band of rows at
+     * a time by TiledPipeline, so that memory use depends on #TILE rather
+     * than the size of the sprite. Set it to 0 to always generate sprites
+     * whole. Resource packs are always generated whole.
+     */
+    public static final long TILED = Long.getLong("overlay.tiled", 2048L * 2048);
+    /** The number of pixels in each band of rows generated by TiledPipeline. */
+    public static final int TILE = Integer.getInteger("overlay.tile", 1 << 18);
+}
\ No newline at end of file
@@ -0,0 +1,261 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An on-disk cache of decoded sprites, so that reruns can skip PNG decoding.
+ * Each source file gets one raw ARGB file in Settings#SPRITE_CACHE, named by
+ * a hash of its canonical path and read back through a memory mapping. An
+ * entry records the source's size and modification time, and is replaced as
+ * soon as either one changes.
+ *
+ * The cache is only an optimization: if it can't be read or written, the
+ * sprite is simply decoded as usual.
+ */
+public class SpriteCache {
+    /** "ARGB" */
+    private static final int MAGIC = 0x41524742;
+    private static final int VERSION = 1;
+    /** Magic, version, source size, source mtime, width, height. */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private SpriteCache() {}
+
+    /**
+     * Returns the cached raster for a file if it is still current. Otherwise,
+     * decodes the file and caches the result for next time.
+     */
+    public static ArgbRaster load(File source, Decoder decoder) throws IOException {
+        if (Settings.SPRITE_CACHE.isEmpty()) {
+            return decoder.decode();
+        }
+        final BasicFileAttributes attributes = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+        final long size = attributes.size();
+        final long mtime = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        final Path entry = getEntry(source);
+
+        final ArgbRaster cached = read(entry, size, mtime);
+        if (cached != null) {
+            return cached;
+        }
+        final ArgbRaster raster = decoder.decode();
+        write(entry, size, mtime, raster);
+        return raster;
+    }
+
+    /**
+     * Opens the cache entry for a file as rows which are read on demand, for
+     * sprites too large to hold at once. If the entry is missing or stale,
+     * the file is first decoded into it a band of rows at a time. Without a
+     * cache directory, the entry is a temporary file which is deleted once
+     * the rows are closed.
+     */
+    public static SpriteRows open(File source, int bandRows) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+        final long size = attributes.size();
+        final long mtime = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (!Settings.SPRITE_CACHE.isEmpty()) {
+            final Path entry = getEntry(source);
+            final SpriteRows cached = openEntry(entry, size, mtime, false);
+            if (cached != null) {
+                return cached;
+            }
+            Files.createDirectories(entry.getParent());
+            final Path temp = Files.createTempFile(entry.getParent(), "sprite", ".tmp");
+            try {
+                decodeBands(source, temp, size, mtime, bandRows);
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            final SpriteRows rows = openEntry(entry, size, mtime, false);
+            if (rows == null) {
+                throw new IOException("Error caching image: " + source);
+            }
+            return rows;
+        }
+        final Path temp = Files.createTempFile("sprite", ".argb");
+        try {
+            decodeBands(source, temp, size, mtime, bandRows);
+            final SpriteRows rows = openEntry(temp, size, mtime, true);
+            if (rows == null) {
+                throw new IOException("Error caching image: " + source);
+            }
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /** Opens an entry if it is still current, or returns null. */
+    private static SpriteRows openEntry(Path entry, long size, long mtime, boolean temporary) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(entry, StandardOpenOption.READ);
+            final int[] dimensions = readDimensions(channel, size, mtime);
+            if (dimensions != null) {
+                return new SpriteRows(channel, HEADER_SIZE, dimensions[0], dimensions[1], temporary ? entry : null);
+            }
+        } catch (IOException ignored) {}
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a file into an entry one band of rows at a time. Most large
+     * textures are read in a single pass by PngRowReader. Anything else is
+     * decoded by ImageIO one band at a time, which costs more than decoding
+     * the file at once, but this only happens when the file changes.
+     */
+    private static void decodeBands(File source, Path entry, long size, long mtime, int bandRows) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.WRITE)) {
+            try (PngRowReader reader = PngRowReader.open(source)) {
+                if (reader != null) {
+                    long position = writeHeader(channel, size, mtime, reader.width, reader.height);
+                    final int[] band = new int[reader.width * bandRows];
+                    for (int y = 0; y < reader.height; y += bandRows) {
+                        final int rows = Math.min(bandRows, reader.height - y);
+                        reader.read(band, rows);
+                        position = writePixels(channel, position, band, reader.width * rows);
+                    }
+                    return;
+                }
+            }
+            try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+                final Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+                if (readers == null || !readers.hasNext()) {
+                    throw new IOException("Error reading image: " + source);
+                }
+                final ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in);
+                    final int width = reader.getWidth(0), height = reader.getHeight(0);
+                    long position = writeHeader(channel, size, mtime, width, height);
+                    for (int y = 0; y < height; y += bandRows) {
+                        final ImageReadParam param = reader.getDefaultReadParam();
+                        param.setSourceRegion(new Rectangle(0, y, width, Math.min(bandRows, height - y)));
+                        final ArgbRaster band = ArgbRaster.fromImage(reader.read(0, param));
+                        position = writePixels(channel, position, band.pixels, band.pixels.length);
+                    }
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    /** Writes the header of an entry, returning the position of its first pixel. */
+    private static long writeHeader(FileChannel channel, long size, long mtime, int width, int height) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(mtime).putInt(width).putInt(height);
+        header.flip();
+        return writePixels(channel, 0, header);
+    }
+
+    /** Writes the first pixels of an array at a position, returning the position after them. */
+    private static long writePixels(FileChannel channel, long position, int[] pixels, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4 * length);
+        buffer.asIntBuffer().put(pixels, 0, length);
+        return writePixels(channel, position, buffer);
+    }
+
+    private static long writePixels(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static Path getEntry(File source) throws IOException {
+        final byte[] path = source.getCanonicalPath().getBytes(StandardCharsets.UTF_8);
+        return new File(Settings.SPRITE_CACHE, Hashes.sha256(path) + ".argb").toPath();
+    }
+
+    /** Maps the entry and copies its pixels out, or returns null if it is missing or stale. */
+    private static ArgbRaster read(Path entry, long size, long mtime) {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            final int[] dimensions = readDimensions(channel, size, mtime);
+            if (dimensions == null) {
+                return null;
+            }
+            final int width = dimensions[0], height = dimensions[1];
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 4L * width * height);
+            final int[] pixels = new int[width * height];
+            buffer.asIntBuffer().get(pixels);
+            return new ArgbRaster(width, height, pixels);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Reads the width and height of an entry, or returns null if it is stale or malformed. */
+    private static int[] readDimensions(FileChannel channel, long size, long mtime) throws IOException {
+        final long length = channel.size();
+        if (length < HEADER_SIZE) {
+            return null;
+        }
+        final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION
+                || header.getLong() != size || header.getLong() != mtime) {
+            return null;
+        }
+        final int width = header.getInt(), height = header.getInt();
+        if (width <= 0 || height <= 0 || length != HEADER_SIZE + 4L * width * height) {
+            return null;
+        }
+        return new int[] {width, height};
+    }
+
+    /**
+     * Writes a new entry beside the old one and then moves it into place, so
+     * that other threads and processes never see a partial file.
+     */
+    private static void write(Path entry, long size, long mtime, ArgbRaster raster) {
+        Path temp = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            temp = Files.createTempFile(entry.getParent(), "sprite", ".tmp");
+            final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * raster.pixels.length);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(mtime);
+            buffer.putInt(raster.width).putInt(raster.height);
+            buffer.asIntBuffer().put(raster.pixels);
+            buffer.rewind();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {
+            // The sprite will be decoded again next time.
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Decodes a sprite when it isn't in the cache. */
+    public interface Decoder {
+        ArgbRaster decode() throws IOException;
+    }
+}
\ No newline at end of file
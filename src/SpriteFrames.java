@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * An animation strip split into square frames, stacked from top to bottom.
+ * Slow animations often repeat the same frame, so identical frames are only
+ * stored once. Each distinct frame can then be processed independently and
+ * the results stacked back into a strip of the original length.
+ */
+public class SpriteFrames {
+    public final int width, frameHeight, count;
+    /** Every distinct frame, in order of first appearance. */
+    public final List<ArgbRaster> distinct;
+    /** The index in #distinct of each frame. */
+    private final int[] frameOf;
+
+    private SpriteFrames(int width, int frameHeight, List<ArgbRaster> distinct, int[] frameOf) {
+        this.width = width;
+        this.frameHeight = frameHeight;
+        this.count = frameOf.length;
+        this.distinct = distinct;
+        this.frameOf = frameOf;
+    }
+
+    /**
+     * Splits a sprite into frames. Sprites which aren't a whole number of
+     * square frames are treated as a single frame and are not copied.
+     */
+    public static SpriteFrames of(ArgbRaster sprite) {
+        final int w = sprite.width, h = sprite.height;
+        if (h <= w || h % w != 0) {
+            return new SpriteFrames(w, h, List.of(sprite), new int[1]);
+        }
+        final int size = w * w, count = h / w;
+        final List<ArgbRaster> distinct = new ArrayList<>();
+        final List<Integer> starts = new ArrayList<>();
+        final int[] hashes = new int[count];
+        final int[] frameOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(sprite.pixels, i * size, size);
+            frameOf[i] = -1;
+            for (int j = 0; j < distinct.size(); j++) {
+                final int start = starts.get(j);
+                if (hashes[start / size] == hashes[i]
+                    && Arrays.equals(sprite.pixels, start, start + size, sprite.pixels, i * size, (i + 1) * size)) {
+                    frameOf[i] = j;
+                    break;
+                }
+            }
+            if (frameOf[i] < 0) {
+                final ArgbRaster frame = new ArgbRaster(w, w);
+                System.arraycopy(sprite.pixels, i * size, frame.pixels, 0, size);
+                frameOf[i] = distinct.size();
+                distinct.add(frame);
+                starts.add(i * size);
+            }
+        }
+        return new SpriteFrames(w, w, distinct, frameOf);
+    }
+
+    private static int hash(int[] pixels, int from, int length) {
+        int hash = 1;
+        for (int i = from; i < from + length; i++) {
+            hash = 31 * hash + pixels[i];
+        }
+        return hash;
+    }
+
+    /** Returns the frame at an index, counting repeated frames. */
+    public ArgbRaster get(int index) {
+        return distinct.get(frameOf[index]);
+    }
+
+    /**
+     * Applies the function to every distinct frame, returning the results in
+     * the same order as #distinct. Frames are processed in parallel when there
+     * is more than one.
+     */
+    public <T> List<T> map(Function<ArgbRaster, T> function) {
+        if (distinct.size() == 1) {
+            return List.of(function.apply(distinct.get(0)));
+        }
+        return IntStream.range(0, distinct.size())
+            .parallel()
+            .mapToObj(i -> function.apply(distinct.get(i)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Stacks one result per distinct frame, as returned by #map, into a strip
+     * with a copy for every frame. Every result must be the same size.
+     */
+    public ArgbRaster stack(List<ArgbRaster> results) {
+        if (count == 1) {
+            return results.get(0);
+        }
+        final ArgbRaster first = results.get(0);
+        final int size = first.pixels.length;
+        final ArgbRaster strip = new ArgbRaster(first.width, first.height * count);
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(results.get(frameOf[i]).pixels, 0, strip.pixels, i * size, size);
+        }
+        return strip;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The rows of a decoded sprite in a SpriteCache entry, read through a memory
+ * mapping only as they are needed. Unlike a raster, the pixels never have to
+ * fit on the heap all at once.
+ */
+public class SpriteRows implements Closeable {
+    public final int width, height;
+    private final FileChannel channel;
+    /** The position of the first pixel in the file. */
+    private final long start;
+    /** The file to delete once closed, or null to keep it. */
+    private final Path temporary;
+
+    SpriteRows(FileChannel channel, long start, int width, int height, Path temporary) {
+        this.channel = channel;
+        this.start = start;
+        this.width = width;
+        this.height = height;
+        this.temporary = temporary;
+    }
+
+    /** Copies a number of rows starting at y into the start of an array. */
+    public void read(int y, int rows, int[] out) throws IOException {
+        if (y < 0 || rows < 0 || y + rows > height) {
+            throw new IndexOutOfBoundsException("Rows " + y + " to " + (y + rows) + " of " + height);
+        }
+        final long position = start + 4L * y * width;
+        channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * rows * width).asIntBuffer().get(out, 0, rows * width);
+    }
+
+    /** Variant of #read which returns the rows as a new raster. */
+    public ArgbRaster read(int y, int rows) throws IOException {
+        final ArgbRaster raster = new ArgbRaster(width, rows);
+        read(y, rows, raster.pixels);
+        return raster;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (temporary != null) {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
\ No newline at end of file
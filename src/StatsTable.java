@@ -0,0 +1,196 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics printed for every pair by Main#debugImage, collected into one
+ * table per run. The table is written as CSV with a row per pair and a column
+ * per metric, which Correlations can read back in.
+ */
+public class StatsTable {
+    /** Each row of metrics by the path of its pair. */
+    private final Map<String, Row> rows = new ConcurrentHashMap<>();
+
+    /** Derives every metric from a pair's stats, in the order they are printed. */
+    public static Map<String, Double> getMetrics(ImageStats stats) {
+        final double diffAB = stats.avgDistance;
+        final double diffA = stats.fgDistance;
+        final double diffB = stats.bgDistance;
+        final double diffD = Math.abs(diffAB - diffA);
+        final double diffE = Math.abs(diffAB - diffB);
+        final double diffU = Math.abs(diffA - diffB);
+        final double diffW = diffAB / diffU;
+        final double sumU = diffA + diffB;
+        final double diffS = Math.abs(diffAB - sumU);
+        final double thrsA = 2.3 * diffAB;
+        final double multD = thrsA / diffD;
+        final double multU = thrsA / diffU;
+        final double multS = thrsA / diffS;
+        final double avgDst = stats.avgDistance;
+        final double maxDst = stats.maxDistance;
+        final double ratDst = maxDst / avgDst;
+        final double avgDstBg = stats.bgDistance;
+        final double maxDist = stats.maxDistance;
+        final double maxRel = stats.maxRelDistance;
+
+        final Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("diff(fg/bg)", diffAB);
+        metrics.put("diff(fg)", diffA);
+        metrics.put("diff(bg)", diffB);
+        metrics.put("diffD", diffD);
+        metrics.put("diffE", diffE);
+        metrics.put("diffU", diffU);
+        metrics.put("diffS", diffS);
+        metrics.put("diffW", diffW);
+        metrics.put("multD", multD);
+        metrics.put("multU", multU);
+        metrics.put("multS", multS);
+        metrics.put("avgDst", avgDst);
+        metrics.put("maxDst", maxDst);
+        metrics.put("ratDst", ratDst);
+        metrics.put("avgDstBg", avgDstBg);
+        metrics.put("max rel", maxRel);
+        metrics.put("max std", maxDist);
+        return metrics;
+    }
+
+    /** Adds or replaces the row for a single pair. */
+    public void add(ImagePair pair, Map<String, Double> metrics) {
+        rows.put(pair.getPath(), new Row(pair.name, metrics));
+    }
+
+    /**
+     * Returns the metrics for each sprite by name, like #read. Where several
+     * pairs share a name, the first by path is kept.
+     */
+    public Map<String, Map<String, Double>> getMetrics() {
+        final List<String> paths = new ArrayList<>(rows.keySet());
+        Collections.sort(paths);
+        final Map<String, Map<String, Double>> table = new LinkedHashMap<>();
+        for (String path : paths) {
+            final Row row = rows.get(path);
+            putFirst(table, row.name, row.metrics, path);
+        }
+        return table;
+    }
+
+    /** Writes every row, sorted by path. Columns follow the order of #getMetrics. */
+    public void write(File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        final List<String> paths = new ArrayList<>(rows.keySet());
+        Collections.sort(paths);
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            if (paths.isEmpty()) {
+                return;
+            }
+            final List<String> columns = new ArrayList<>(rows.get(paths.get(0)).metrics.keySet());
+            out.print("path,name");
+            for (String column : columns) {
+                out.print("," + quote(column));
+            }
+            out.println();
+            for (String path : paths) {
+                final Row row = rows.get(path);
+                out.print(quote(path) + "," + quote(row.name));
+                for (String column : columns) {
+                    out.print("," + row.metrics.get(column));
+                }
+                out.println();
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by #write, returning the metrics for each sprite
+     * by name. Where several pairs share a name, the first by path is kept.
+     */
+    public static Map<String, Map<String, Double>> read(File file) throws IOException {
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        final Map<String, Map<String, Double>> table = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return table;
+        }
+        final List<String> columns = split(lines.get(0));
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final List<String> fields = split(line);
+            final Map<String, Double> metrics = new LinkedHashMap<>();
+            for (int i = 2; i < Math.min(columns.size(), fields.size()); i++) {
+                metrics.put(columns.get(i), Double.parseDouble(fields.get(i)));
+            }
+            putFirst(table, fields.get(1), metrics, fields.get(0));
+        }
+        return table;
+    }
+
+    /**
+     * Adds the metrics of a sprite unless another with the same name was
+     * added first, in which case they can't be told apart and a warning is
+     * printed instead.
+     */
+    private static void putFirst(Map<String, Map<String, Double>> table, String name, Map<String, Double> metrics, String path) {
+        if (table.putIfAbsent(name, metrics) != null) {
+            System.err.println("Ignoring the stats of " + path + ", another sprite is already named " + name);
+        }
+    }
+
+    private static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /** Splits a line of CSV, allowing quoted fields. */
+    private static List<String> split(String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /** The metrics for a single pair. */
+    private static class Row {
+        final String name;
+        final Map<String, Double> metrics;
+
+        Row(String name, Map<String, Double> metrics) {
+            this.name = name;
+            this.metrics = metrics;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * Generates #getOverlayManual at any number of thresholds for a single pair.
+ * Every pixel's score is calculated once, after which each level only has to
+ * compare scores, and a full sweep only adds the newly passing pixels to the
+ * previous level instead of regenerating the whole image.
+ */
+public class ThresholdSweep {
+    private final int width, height;
+    /** The foreground pixel at each position in the background. */
+    private final int[] pixels;
+    private final double[] scores;
+
+    public ThresholdSweep(BackgroundProfile profile, ArgbRaster fg, ImageStats stats) {
+        this(FeaturePlanes.of(profile, fg, stats));
+    }
+
+    /** Variant of the constructor which reuses the features of a pair. */
+    public ThresholdSweep(FeaturePlanes features) {
+        this.width = features.width;
+        this.height = features.height;
+        this.pixels = features.foreground;
+        this.scores = ImageTools.getManualScores(features);
+    }
+
+    /** Generates the overlay for a single threshold. */
+    public ArgbRaster getOverlay(double threshold) {
+        final ArgbRaster overlay = new ArgbRaster(width, height);
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] > threshold) {
+                overlay.pixels[i] = pixels[i];
+            }
+        }
+        return overlay;
+    }
+
+    /**
+     * Generates the overlay for every threshold, from highest to lowest.
+     * The same raster is reused and updated between levels, so it must be
+     * copied if it is needed after the consumer returns.
+     */
+    public void sweep(double[] thresholds, LevelConsumer consumer) throws Exception {
+        final double[] levels = thresholds.clone();
+        Arrays.sort(levels);
+        final int numLevels = levels.length;
+        // Each pixel passes every level below the first one
+        // that is >= its score. Bucket the pixels by that count.
+        final int[] passed = new int[scores.length];
+        final int[] bucketStart = new int[numLevels + 2];
+        for (int i = 0; i < scores.length; i++) {
+            passed[i] = countBelow(levels, scores[i]);
+            bucketStart[passed[i] + 1]++;
+        }
+        for (int k = 1; k < bucketStart.length; k++) {
+            bucketStart[k] += bucketStart[k - 1];
+        }
+        final int[] order = new int[scores.length];
+        final int[] next = bucketStart.clone();
+        for (int i = 0; i < scores.length; i++) {
+            order[next[passed[i]]++] = i;
+        }
+        // Walk down from the highest level, adding each bucket in turn.
+        final ArgbRaster overlay = new ArgbRaster(width, height);
+        for (int level = numLevels - 1; level >= 0; level--) {
+            for (int j = bucketStart[level + 1]; j < bucketStart[level + 2]; j++) {
+                overlay.pixels[order[j]] = pixels[order[j]];
+            }
+            consumer.accept(levels[level], overlay);
+        }
+    }
+
+    /** Counts the levels which are strictly less than the score. */
+    private static int countBelow(double[] levels, double score) {
+        int lo = 0, hi = levels.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (levels[mid] < score) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Receives the overlay generated for each threshold. */
+    public interface LevelConsumer {
+        void accept(double threshold, ArgbRaster overlay) throws Exception;
+    }
+}
\ No newline at end of file
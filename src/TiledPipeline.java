@@ -0,0 +1,192 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * Generates the overlays of sprites too large to comfortably hold in memory,
+ * such as 2048x textures or whole atlases, a band of rows at a time. See
+ * Settings#TILED.
+ *
+ * Both sprites are decoded into SpriteCache and mapped rather than loaded.
+ * The stats behind OverlayData are calculated in a first pass over the rows,
+ * and then every band goes through the same overlay and shade pipeline as
+ * Main#getOverlays and is streamed straight into the PNG files. Memory use
+ * depends on Settings#TILE rather than the size of the sprite, and every
+ * pixel matches what the sprite would get if it were generated whole.
+ *
+ * Since PNGs are written one band at a time, they are always encoded with
+ * LeanPngEncoder.
+ */
+public class TiledPipeline {
+    /** The compressed data of each PNG is written out in chunks of about this size. */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private TiledPipeline() {}
+
+    /**
+     * Whether a pair is large enough to be generated in bands, and shaped
+     * the way that this supports: a background the size of a single frame
+     * of the ore. Only the headers of the files are read.
+     */
+    public static boolean shouldTile(ImagePair pair) throws IOException {
+        if (Settings.TILED <= 0) {
+            return false;
+        }
+        final Dimension fg = readSize(pair.ore);
+        if ((long) fg.width * fg.height < Settings.TILED) {
+            return false;
+        }
+        final Dimension bg = readSize(pair.background);
+        return bg.width == fg.width && bg.height == getFrameHeight(fg.width, fg.height);
+    }
+
+    /** The size of an image, read from its header. */
+    private static Dimension readSize(File f) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(f)) {
+            final Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Error reading image: " + f);
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** The height of each frame of a sprite, the same as SpriteFrames#of. */
+    private static int getFrameHeight(int width, int height) {
+        return height > width && height % width == 0 ? width : height;
+    }
+
+    /** The number of rows in each band of a sprite of the given width. */
+    private static int getBandRows(int width) {
+        return Math.max(1, Settings.TILE / width);
+    }
+
+    /** Calculates the stats of a pair without generating anything. */
+    public static ImageStats getStats(ImagePair pair) throws IOException {
+        final int bandRows = getBandRows(readSize(pair.ore).width);
+        try (SpriteRows bg = SpriteCache.open(pair.background, bandRows);
+             SpriteRows fg = SpriteCache.open(pair.ore, bandRows)) {
+            return getStats(bg, fg, 0, fg.height, bandRows);
+        }
+    }
+
+    /**
+     * Writes the overlay and shaded overlay of a pair to two files, returning
+     * the stats of the whole pair. Each frame of an animation is generated
+     * with its own stats, like Main#getOverlays.
+     */
+    public static ImageStats generate(ImagePair pair, File overlayFile, File shadedFile) throws IOException {
+        final int bandRows = getBandRows(readSize(pair.ore).width);
+        final SpriteRows bg, fg;
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.LOAD)) {
+            bg = SpriteCache.open(pair.background, bandRows);
+            try {
+                fg = SpriteCache.open(pair.ore, bandRows);
+            } catch (IOException | RuntimeException e) {
+                bg.close();
+                throw e;
+            }
+            t.pixels((long) bg.width * bg.height + (long) fg.width * fg.height);
+        }
+        try (bg; fg) {
+            final int width = fg.width, frameHeight = getFrameHeight(fg.width, fg.height);
+            final int frames = fg.height / frameHeight;
+            final ImageStats stats = getStats(bg, fg, 0, fg.height, bandRows);
+            final LeanPngEncoder encoder = new LeanPngEncoder(Settings.PNG_LEVEL);
+            try (OutputStream overlayOs = newOutput(overlayFile);
+                 OutputStream shadedOs = newOutput(shadedFile);
+                 LeanPngEncoder.RowWriter overlays = encoder.start(overlayOs, width, fg.height, CHUNK_SIZE);
+                 LeanPngEncoder.RowWriter shaded = encoder.start(shadedOs, width, fg.height, CHUNK_SIZE)) {
+                for (int frame = 0; frame < frames; frame++) {
+                    final int start = frame * frameHeight;
+                    final ImageStats frameStats =
+                        frames == 1 ? stats : getStats(bg, fg, start, start + frameHeight, bandRows);
+                    for (int y = 0; y < frameHeight; y += bandRows) {
+                        final int rows = Math.min(bandRows, frameHeight - y);
+                        final Main.Overlays band = getOverlays(bg.read(y, rows), fg.read(start + y, rows),
+                            frameHeight, y, stats.bgAvgColor, frameStats);
+                        try (Metrics.Timer t = Metrics.start(Metrics.Stage.ENCODE)) {
+                            t.pixels(2L * width * rows);
+                            overlays.write(band.overlay);
+                            shaded.write(band.shaded);
+                        }
+                    }
+                }
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Generates the overlay and shaded overlay of a band of rows starting at
+     * y within a frame of the given height.
+     */
+    private static Main.Overlays getOverlays(ArgbRaster bg, ArgbRaster fg, int frameHeight, int y, int bgAvgColor, ImageStats stats) {
+        final int pixels = fg.pixels.length;
+        final FeaturePlanes features;
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.FEATURES)) {
+            t.pixels(pixels);
+            features = FeaturePlanes.of(bg, fg, stats);
+        }
+        final ArgbRaster overlay;
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.OVERLAY)) {
+            t.pixels(pixels);
+            overlay = ImageTools.getOverlay(features, OverlayParameters.DEFAULT);
+        }
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.SHADE)) {
+            t.pixels(pixels);
+            // The same as BackgroundProfile#getFilled, which would cache a raster of every band size.
+            final ArgbRaster bgFilled = ImageTools.fillColors(new ArgbRaster(fg.width, fg.height), bgAvgColor);
+            final byte[] mask = VignetteMasks.getRows(fg.width, frameHeight, y, fg.height);
+            return new Main.Overlays(overlay, ImageTools.shadeOverlay(overlay.copy(), bgFilled, fg, mask));
+        }
+    }
+
+    /**
+     * Calculates the stats of the background paired with the ore rows from
+     * start up to end, reading a band of rows from each at a time.
+     */
+    private static ImageStats getStats(SpriteRows bg, SpriteRows fg, int start, int end, int bandRows) throws IOException {
+        try (Metrics.Timer t = Metrics.start(Metrics.Stage.STATS)) {
+            t.pixels((long) fg.width * (end - start));
+            final int fgHeight = end - start;
+            final ImageStats.Accumulator a = ImageStats.accumulate(bg.width, bg.height, fg.width, fgHeight);
+            // Each band also holds the row below it, which its last row is compared with.
+            final int[] bgRows = new int[bg.width * (bandRows + 1)];
+            final int[] fgRows = new int[fg.width * (bandRows + 1)];
+            final int rows = Math.max(bg.height, fgHeight);
+            for (int y = 0; y < rows; y += bandRows) {
+                final int y1 = Math.min(y + bandRows, rows);
+                if (y < bg.height) {
+                    bg.read(y, Math.min(y1 + 1, bg.height) - y, bgRows);
+                }
+                if (y < fgHeight) {
+                    fg.read(start + y, Math.min(y1 + 1, fgHeight) - y, fgRows);
+                }
+                a.add(bgRows, fgRows, y, y1);
+            }
+            return a.finish();
+        }
+    }
+
+    private static OutputStream newOutput(File f) throws IOException {
+        final File parent = f.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        return new BufferedOutputStream(Files.newOutputStream(f.toPath()), 1 << 16);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * PixelKernels built on the incubating Vector API. Packed pixels are loaded
+ * a full vector at a time and split into channel lanes with shifts and masks.
+ * Anything computed in floating point by the scalar code is computed in
+ * double lanes here, so the results are bit-identical.
+ *
+ * This class only links when the JVM is started with
+ * --add-modules jdk.incubator.vector. See PixelKernels#select.
+ */
+public class VectorKernels implements PixelKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    /** Ints with one lane per double lane, so the two convert without splitting. */
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    /** Bytes with at least one lane per int lane, for the alpha masks. */
+    private static final VectorSpecies<Byte> BYTES =
+        VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INTS.length() * 8)));
+    /** 2^52, the smallest double with no fractional bits. */
+    private static final double MANTISSA_SHIFT = 0x1p52;
+
+    public VectorKernels() {
+        if (DOUBLES.length() < 2) {
+            throw new UnsupportedOperationException("No vector hardware available.");
+        }
+    }
+
+    @Override
+    public void distances(int[] background, int[] foreground, double[] out) {
+        final int bound = INTS.loopBound(out.length);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            final IntVector bg = IntVector.fromArray(INTS, background, i);
+            final IntVector fg = IntVector.fromArray(INTS, foreground, i);
+            final IntVector r = red(fg).sub(red(bg)), g = green(fg).sub(green(bg)), b = blue(fg).sub(blue(bg));
+            norm(r, g, b, ImageTools.MAX_DIFFERENCE).intoArray(out, i);
+        }
+        for (; i < out.length; i++) {
+            out[i] = ImageTools.getDistance(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public void relativeDistances(int[] background, int[] foreground, double[] out) {
+        final int bound = INTS.loopBound(out.length);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            final IntVector bg = IntVector.fromArray(INTS, background, i);
+            final IntVector fg = IntVector.fromArray(INTS, foreground, i);
+            final IntVector r = red(fg).sub(red(bg)), g = green(fg).sub(green(bg)), b = blue(fg).sub(blue(bg));
+            final IntVector min = r.min(g).min(b);
+            norm(r.sub(min), g.sub(min), b.sub(min), ImageTools.MAX_ADJUSTMENT).intoArray(out, i);
+        }
+        for (; i < out.length; i++) {
+            out[i] = ImageTools.getRelativeDistance(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public void pushAndPull(int[] background, int[] foreground, int[] out) {
+        final int bound = INTS.loopBound(out.length);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            final IntVector bg = IntVector.fromArray(INTS, background, i);
+            final IntVector fg = IntVector.fromArray(INTS, foreground, i);
+            final IntVector r = red(bg).sub(red(fg)), g = green(bg).sub(green(fg)), b = blue(bg).sub(blue(fg));
+            final IntVector alpha = toInts(norm(r, g, b, ImageTools.MAX_DIFFERENCE).mul(255.0)).max(0).min(200);
+            // The foreground is darker when its channels sum to less than the background's.
+            final VectorMask<Integer> darker = r.add(g).add(b).compare(VectorOperators.GT, 0);
+            final IntVector color = IntVector.broadcast(INTS, 0xFFFFFF).blend(0, darker);
+            alpha.lanewise(VectorOperators.LSHL, 24).or(color).intoArray(out, i);
+        }
+        for (; i < out.length; i++) {
+            out[i] = ImageTools.getPushAndPull(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public void removePixels(int[] image, byte[] mask) {
+        // Each byte vector holds the mask for one or more int vectors.
+        final int parts = BYTES.length() / INTS.length();
+        final int bound = BYTES.loopBound(image.length);
+        int i = 0;
+        for (; i < bound; i += BYTES.length()) {
+            final ByteVector alphas = ByteVector.fromArray(BYTES, mask, i);
+            for (int part = 0; part < parts; part++) {
+                final int j = i + part * INTS.length();
+                final IntVector m = ((IntVector) alphas.convertShape(VectorOperators.B2I, INTS, part)).and(0xFF);
+                removePixels(image, j, m);
+            }
+        }
+        for (; i < image.length; i++) {
+            image[i] = ImageTools.removePixel(image[i], mask[i] & 0xFF);
+        }
+    }
+
+    private static void removePixels(int[] image, int i, IntVector maskAlpha) {
+        final IntVector pixel = IntVector.fromArray(INTS, image, i);
+        final DoubleVector keep = DoubleVector.broadcast(DOUBLES, 1.0).sub(toDoubles(maskAlpha).div(255.0));
+        final IntVector a = toInts(toDoubles(alpha(pixel)).mul(keep)).max(0).min(255);
+        a.lanewise(VectorOperators.LSHL, 24).or(pixel.and(0xFFFFFF)).intoArray(image, i);
+    }
+
+    @Override
+    public void blend(int[] background, int[] foreground) {
+        final int bound = INTS.loopBound(foreground.length);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            final IntVector bg = IntVector.fromArray(INTS, background, i);
+            final IntVector fg = IntVector.fromArray(INTS, foreground, i);
+            final IntVector fgA = alpha(fg), bgWeight = IntVector.broadcast(INTS, 255).sub(fgA);
+            // Red and blue are blended side by side in one int, which keeps
+            // this loop small enough for C2 to inline.
+            final IntVector rb = div255Pair(fg.and(0xFF00FF).mul(fgA).add(bg.and(0xFF00FF).mul(bgWeight)));
+            final IntVector g = div255(green(fg).mul(fgA).add(green(bg).mul(bgWeight)));
+            final VectorMask<Integer> opaque = fgA.compare(VectorOperators.GT, ImageTools.OPACITY_THRESHOLD);
+            final IntVector rgb = rb.or(g.lanewise(VectorOperators.LSHL, 8)).blend(fg.and(0xFFFFFF), opaque);
+            final IntVector a = fgA.add(alpha(bg));
+            final VectorMask<Integer> white = a.compare(VectorOperators.LT, ImageTools.TRANSPARENCY_THRESHOLD)
+                .and(rgb.compare(VectorOperators.EQ, 0xFFFFFF));
+            final IntVector sharpened = toInts(toDoubles(a).mul(ImageTools.TEXTURE_SHARPEN_RATIO)).max(0).min(255);
+            sharpened.lanewise(VectorOperators.LSHL, 24)
+                .or(rgb)
+                .blend(0, white)
+                .intoArray(foreground, i);
+        }
+        for (; i < foreground.length; i++) {
+            foreground[i] = ImageTools.blendPixels(background[i], foreground[i]);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    private static IntVector alpha(IntVector argb) {
+        return argb.lanewise(VectorOperators.LSHR, 24);
+    }
+
+    private static IntVector red(IntVector argb) {
+        return argb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+    }
+
+    private static IntVector green(IntVector argb) {
+        return argb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+    }
+
+    private static IntVector blue(IntVector argb) {
+        return argb.and(0xFF);
+    }
+
+    /** The length of each (r, g, b) divided by max, as in ImageTools#getDistance. */
+    private static DoubleVector norm(IntVector r, IntVector g, IntVector b, double max) {
+        final IntVector squares = r.mul(r).add(g.mul(g)).add(b.mul(b));
+        return toDoubles(squares).lanewise(VectorOperators.SQRT).div(max);
+    }
+
+    /**
+     * Integer division by 255, exact from 0 to 65534. Every value blended
+     * here is at most 255 * 255.
+     */
+    private static IntVector div255(IntVector x) {
+        return x.add(1).add(x.lanewise(VectorOperators.LSHR, 8)).lanewise(VectorOperators.LSHR, 8);
+    }
+
+    /** Variant of #div255 for two 16 bit values packed into bits 0-15 and 16-31. */
+    private static IntVector div255Pair(IntVector x) {
+        final IntVector sum = x.add(0x10001).add(x.lanewise(VectorOperators.LSHR, 8).and(0xFF00FF));
+        return sum.lanewise(VectorOperators.LSHR, 8).and(0xFF00FF);
+    }
+
+    private static DoubleVector toDoubles(IntVector v) {
+        return (DoubleVector) v.convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+
+    /**
+     * Truncates toward zero, like an (int) cast, for any value from 0 up to
+     * 2^31. The D2I conversion is not intrinsified on JDK 17, so instead the
+     * value is shifted into the range where a double's low mantissa bits hold
+     * the integer itself, rounded down, and then narrowed as a long.
+     */
+    private static IntVector toInts(DoubleVector v) {
+        DoubleVector shifted = v.add(MANTISSA_SHIFT);
+        // The addition rounds to nearest, so undo any rounding up.
+        shifted = shifted.blend(shifted.sub(1.0), shifted.sub(MANTISSA_SHIFT).compare(VectorOperators.GT, v));
+        final LongVector bits = shifted.viewAsIntegralLanes();
+        return (IntVector) bits.convertShape(VectorOperators.L2I, INTS, 0);
+    }
+}
\ No newline at end of file
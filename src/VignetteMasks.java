@@ -0,0 +1,125 @@
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The vignette mask used by ImageTools#shadeOverlay, scaled to the size of
+ * each sprite. Its shape only depends on the size of the sprite, so every
+ * scaled mask is cached as one alpha byte per pixel. The least recently used
+ * sizes are evicted once the cache is full.
+ */
+public class VignetteMasks {
+    /** The location of the the vignette mask. */
+    private static final String LOCATION = "mask.png";
+    /** The number of distinct sizes kept in memory. */
+    private static final int CAPACITY = 64;
+
+    private static final Map<Long, byte[]> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private VignetteMasks() {}
+
+    /** The source mask, which is only loaded once a sprite is actually shaded. */
+    private static class Source {
+        static final ArgbRaster RASTER = load();
+
+        private static ArgbRaster load() {
+            final BufferedImage image = Main.loadImage(LOCATION)
+                .orElseThrow(() -> new RuntimeException("Build error: mask path is invalid."));
+            return ArgbRaster.fromImage(image);
+        }
+    }
+
+    /**
+     * Returns the alpha levels of the mask for a sprite of the given size.
+     * The mask is scaled to a single square frame and repeated for every
+     * frame of an animated sprite. The result is shared and must not be
+     * modified.
+     */
+    public static byte[] get(int width, int height) {
+        final int frameHeight = Math.min(width, height);
+        final int frames = (height + frameHeight - 1) / frameHeight;
+        return get(width, frameHeight, frames);
+    }
+
+    /** Returns the alpha levels of the mask scaled to width x frameHeight, repeated frames times. */
+    public static byte[] get(int width, int frameHeight, int frames) {
+        final long key = ((long) width << 42) | ((long) frameHeight << 21) | frames;
+        synchronized (CACHE) {
+            final byte[] cached = CACHE.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Scaling happens outside of the lock. Two threads may occasionally
+        // build the same mask, but never wait on each other's.
+        final byte[] mask = build(width, frameHeight, frames);
+        synchronized (CACHE) {
+            final byte[] raced = CACHE.putIfAbsent(key, mask);
+            return raced != null ? raced : mask;
+        }
+    }
+
+    private static byte[] build(int width, int frameHeight, int frames) {
+        final ArgbRaster scaled = ArgbRaster.fromImage(ImageTools.scale(Source.RASTER.toImage(), width, frameHeight));
+        final int frameSize = width * frameHeight;
+        final byte[] mask = new byte[frameSize * frames];
+        for (int i = 0; i < frameSize; i++) {
+            mask[i] = (byte) ArgbRaster.alpha(scaled.pixels[i]);
+        }
+        for (int i = 1; i < frames; i++) {
+            System.arraycopy(mask, 0, mask, frameSize * i, frameSize);
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the alpha levels of a band of rows from the mask for a sprite
+     * of the given size, the same as the matching range of #get. Only the
+     * band is built, so this is never cached and never needs memory for the
+     * whole sprite.
+     */
+    public static byte[] getRows(int width, int height, int y0, int rows) {
+        final int frameHeight = Math.min(width, height);
+        final ArgbRaster source = Source.RASTER;
+        final int[] columns = getSourceIndexes(source.width, width, false);
+        final int[] sourceRows = getSourceIndexes(source.height, frameHeight, true);
+        final byte[] mask = new byte[width * rows];
+        for (int y = 0; y < rows; y++) {
+            final int sourceRow = sourceRows[(y0 + y) % frameHeight] * source.width;
+            for (int x = 0; x < width; x++) {
+                mask[y * width + x] = (byte) ArgbRaster.alpha(source.pixels[sourceRow + columns[x]]);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * The source pixel which ImageTools#scale samples for each pixel along
+     * one axis. Scaling only ever picks the nearest pixel, independently on
+     * each axis, so this is found by scaling a single row or column of
+     * indexes. Drawing the band directly wouldn't work, since it would round
+     * differently from drawing the whole sprite.
+     */
+    private static int[] getSourceIndexes(int sourceLength, int length, boolean vertical) {
+        final ArgbRaster indexes = new ArgbRaster(vertical ? 1 : sourceLength, vertical ? sourceLength : 1);
+        for (int i = 0; i < sourceLength; i++) {
+            indexes.pixels[i] = 0xFF000000 | i;
+        }
+        final BufferedImage scaled = ImageTools.scale(indexes.toImage(), vertical ? 1 : length, vertical ? length : 1);
+        final int[] pixels = ArgbRaster.fromImage(scaled).pixels;
+        for (int i = 0; i < length; i++) {
+            pixels[i] &= 0xFFFFFF;
+        }
+        return pixels;
+    }
+
+    /** A digest of the source mask, for BuildManifest. */
+    static String getDigest() {
+        return Hashes.sha256(Source.RASTER.pixels);
+    }
+}
\ No newline at end of file